@@ -0,0 +1,36 @@
+package org.javastudy.learnquerydsl.benchmark;
+
+import org.javastudy.learnquerydsl.LearnQuerydslApplication;
+import org.javastudy.learnquerydsl.repository.MemberBulkLoader;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts the application without the web layer on its own in-memory H2 database
+ * and seeds it with {@link MemberBulkLoader}.
+ */
+final class BenchmarkApplication {
+
+    static final int TEAM_COUNT = 10;
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(int memberCount, String... properties) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(LearnQuerydslApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(properties)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "spring.jpa.open-in-view=false",
+                        // per statement logging would dominate every measurement
+                        "decorator.datasource.enabled=false",
+                        "logging.level.root=warn"
+                )
+                .run();
+
+        context.getBean(MemberBulkLoader.class).load(memberCount, TEAM_COUNT);
+        return context;
+    }
+}
@@ -0,0 +1,78 @@
+package org.javastudy.learnquerydsl.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.javastudy.learnquerydsl.controller.MemberJsonComponent;
+import org.javastudy.learnquerydsl.dto.MemberDto;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a /members sized list of rows to a discarding stream, with Jackson's bean serializer
+ * and with the serializers of {@link MemberJsonComponent}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonSerializationBenchmark {
+
+    @Param({ "1000", "100000" })
+    int rowCount;
+
+    ObjectMapper beanMapper;
+    ObjectMapper componentMapper;
+    List<MemberTeamDto> memberTeamRows;
+    List<MemberDto> memberRows;
+
+    @Setup
+    public void setUp() {
+        beanMapper = new ObjectMapper();
+        componentMapper = new ObjectMapper().registerModule(new SimpleModule()
+                .addSerializer(MemberTeamDto.class, new MemberJsonComponent.MemberTeamDtoSerializer())
+                .addSerializer(MemberDto.class, new MemberJsonComponent.MemberDtoSerializer()));
+
+        memberTeamRows = new ArrayList<>(rowCount);
+        memberRows = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            int team = i % BenchmarkApplication.TEAM_COUNT;
+            // every tenth member has no team
+            memberTeamRows.add((i % 10 == 9)
+                    ? new MemberTeamDto((long) i, "member" + i, i % 100, null, null)
+                    : new MemberTeamDto((long) i, "member" + i, i % 100, (long) team, "team" + team));
+            memberRows.add(new MemberDto("member" + i, i % 100));
+        }
+    }
+
+    @Benchmark
+    public void memberTeamBean() throws IOException {
+        beanMapper.writeValue(OutputStream.nullOutputStream(), memberTeamRows);
+    }
+
+    @Benchmark
+    public void memberTeamComponent() throws IOException {
+        componentMapper.writeValue(OutputStream.nullOutputStream(), memberTeamRows);
+    }
+
+    @Benchmark
+    public void memberBean() throws IOException {
+        beanMapper.writeValue(OutputStream.nullOutputStream(), memberRows);
+    }
+
+    @Benchmark
+    public void memberComponent() throws IOException {
+        componentMapper.writeValue(OutputStream.nullOutputStream(), memberRows);
+    }
+}
@@ -0,0 +1,84 @@
+package org.javastudy.learnquerydsl.benchmark;
+
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.repository.MemberJpaRepository;
+import org.javastudy.learnquerydsl.repository.MemberRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the access paths of the repositories:
+ * search vs searchByBuilder, and JPQL vs QueryDSL vs Spring Data findByUsername.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MemberRepositoryBenchmark {
+
+    @Param({ "10000", "100000" })
+    int memberCount;
+
+    ConfigurableApplicationContext context;
+    MemberJpaRepository memberJpaRepository;
+    MemberRepository memberRepository;
+    MemberSearchCondition condition;
+    String username;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(memberCount);
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+        memberRepository = context.getBean(MemberRepository.class);
+
+        // one team, one age out of 100: about memberCount / 1000 rows
+        condition = new MemberSearchCondition();
+        condition.setTeamName("team3");
+        condition.setAgeGoe(33);
+        condition.setAgeLoe(33);
+
+        username = "member" + (memberCount / 2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> search() {
+        return memberJpaRepository.search(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> searchByBuilder() {
+        return memberJpaRepository.searchByBuilder(condition);
+    }
+
+    @Benchmark
+    public List<Member> findByUsernameJpql() {
+        return memberJpaRepository.findByUsername(username);
+    }
+
+    @Benchmark
+    public List<Member> findByUsernameQuerydsl() {
+        return memberJpaRepository.findByUsername_Querydsl(username);
+    }
+
+    @Benchmark
+    public List<Member> findByUsernameSpringData() {
+        return memberRepository.findByUsername(username);
+    }
+}
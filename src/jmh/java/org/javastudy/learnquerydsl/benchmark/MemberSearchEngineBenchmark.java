@@ -0,0 +1,74 @@
+package org.javastudy.learnquerydsl.benchmark;
+
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.javastudy.learnquerydsl.repository.MemberJpaRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MemberJpaRepository#search answered by the database vs by the in-memory MemberSearchSnapshot,
+ * for a selective and a broad condition.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MemberSearchEngineBenchmark {
+
+    @Param({ "jpa", "snapshot" })
+    String engine;
+
+    @Param({ "100000" })
+    int memberCount;
+
+    ConfigurableApplicationContext context;
+    MemberJpaRepository memberJpaRepository;
+    MemberSearchCondition selective;
+    MemberSearchCondition broad;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(memberCount, "member.search.engine=" + engine);
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+
+        // one team, one age out of 100: about memberCount / 1000 rows
+        selective = new MemberSearchCondition();
+        selective.setTeamName("team3");
+        selective.setAgeGoe(33);
+        selective.setAgeLoe(33);
+
+        // a tenth of the ages over all teams
+        broad = new MemberSearchCondition();
+        broad.setAgeGoe(40);
+        broad.setAgeLoe(49);
+
+        // loads the snapshot outside of the measurement
+        memberJpaRepository.search(selective);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> selective() {
+        return memberJpaRepository.search(selective);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> broad() {
+        return memberJpaRepository.search(broad);
+    }
+}
@@ -0,0 +1,108 @@
+package org.javastudy.learnquerydsl.benchmark;
+
+import com.querydsl.core.types.Projections;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.javastudy.learnquerydsl.dto.MemberDto;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.javastudy.learnquerydsl.dto.QMemberTeamDto;
+import org.javastudy.learnquerydsl.entity.QMember;
+import org.javastudy.learnquerydsl.entity.QTeam;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the DTO projections of QueryDSL on the same rows.
+ * MemberDto is used for bean/fields/constructor since those need a default constructor and setters,
+ * MemberTeamDto for constructor vs the generated @QueryProjection type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProjectionBenchmark {
+
+    @Param({ "10000" })
+    int memberCount;
+
+    @Param({ "1000" })
+    int rows;
+
+    ConfigurableApplicationContext context;
+    JPAQueryFactory queryFactory;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(memberCount);
+        queryFactory = context.getBean(JPAQueryFactory.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<MemberDto> memberDtoBean() {
+        QMember member = QMember.member;
+        return queryFactory
+                .select(Projections.bean(MemberDto.class, member.username, member.age))
+                .from(member)
+                .limit(rows)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberDto> memberDtoFields() {
+        QMember member = QMember.member;
+        return queryFactory
+                .select(Projections.fields(MemberDto.class, member.username, member.age))
+                .from(member)
+                .limit(rows)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberDto> memberDtoConstructor() {
+        QMember member = QMember.member;
+        return queryFactory
+                .select(Projections.constructor(MemberDto.class, member.username, member.age))
+                .from(member)
+                .limit(rows)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> memberTeamDtoConstructor() {
+        QMember member = QMember.member;
+        QTeam team = QTeam.team;
+        return queryFactory
+                .select(Projections.constructor(MemberTeamDto.class,
+                        member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .limit(rows)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> memberTeamDtoQueryProjection() {
+        QMember member = QMember.member;
+        QTeam team = QTeam.team;
+        return queryFactory
+                .select(new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .limit(rows)
+                .fetch();
+    }
+}
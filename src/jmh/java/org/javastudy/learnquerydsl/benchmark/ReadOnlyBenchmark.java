@@ -0,0 +1,123 @@
+package org.javastudy.learnquerydsl.benchmark;
+
+import org.hibernate.annotations.QueryHints;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.repository.MemberJpaRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads every member and flushes, once as managed entities and once through the read-only
+ * repository methods. The difference is the snapshot copy made per entity and the dirty check
+ * of all of them at flush. {@link #flush(LoadedMembers)} measures the flush alone, on a persistence
+ * context that already holds every member.
+ * <p>
+ * Run with {@code -Djmh.args="ReadOnlyBenchmark -prof gc"} to see the heap side as
+ * {@code gc.alloc.rate.norm}, the bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReadOnlyBenchmark {
+
+    @Param({ "10000", "100000" })
+    int memberCount;
+
+    ConfigurableApplicationContext context;
+    EntityManager em;
+    TransactionTemplate transactionTemplate;
+    MemberJpaRepository memberJpaRepository;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(memberCount);
+        em = context.getBean(EntityManager.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * Managed entities in a read-write transaction: snapshotted on load, dirty-checked at flush.
+     */
+    @Benchmark
+    public int managedLoadAndFlush() {
+        return transactionTemplate.execute(status -> {
+            List<Member> members = em.createQuery("select m from Member m", Member.class).getResultList();
+            em.flush();
+            return members.size();
+        });
+    }
+
+    /**
+     * The same transaction with the read-only {@link MemberJpaRepository#findAll()}: flush skips the members.
+     */
+    @Benchmark
+    public int readOnlyLoadAndFlush() {
+        return transactionTemplate.execute(status -> {
+            List<Member> members = memberJpaRepository.findAll();
+            em.flush();
+            return members.size();
+        });
+    }
+
+    /**
+     * {@link MemberJpaRepository#findAll()} on its own, in its read-only transaction that is never flushed.
+     */
+    @Benchmark
+    public int readOnlyTransaction() {
+        return memberJpaRepository.findAll().size();
+    }
+
+    /**
+     * Flushes a persistence context holding every member, loaded managed or read-only.
+     * Nothing changes, so each flush is just the dirty check.
+     */
+    @Benchmark
+    public void flush(LoadedMembers loaded) {
+        loaded.em.flush();
+    }
+
+    @State(Scope.Thread)
+    public static class LoadedMembers {
+
+        @Param({ "false", "true" })
+        boolean readOnly;
+
+        EntityManager em;
+
+        @Setup
+        public void load(ReadOnlyBenchmark benchmark) {
+            em = benchmark.context.getBean(EntityManagerFactory.class).createEntityManager();
+            em.getTransaction().begin();
+            // the hint MemberJpaRepository sets on its entity queries
+            em.createQuery("select m from Member m", Member.class)
+                    .setHint(QueryHints.READ_ONLY, readOnly)
+                    .getResultList();
+        }
+
+        @TearDown
+        public void close() {
+            em.getTransaction().rollback();
+            em.close();
+        }
+    }
+}
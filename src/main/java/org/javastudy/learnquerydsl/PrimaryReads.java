@@ -0,0 +1,17 @@
+package org.javastudy.learnquerydsl;
+
+import java.util.function.Supplier;
+
+/**
+ * Reads that must not miss a committed write, run on the primary whatever the routing would choose, see
+ * {@link ReplicaRoutingConfig}. There is no bean of this type without a replica, where every read sees every
+ * committed write.
+ */
+public interface PrimaryReads {
+
+    /**
+     * Runs {@code reads} in a read-only transaction of its own on the primary, also when called inside a
+     * transaction that reads from the replica.
+     */
+    <T> T call(Supplier<T> reads);
+}
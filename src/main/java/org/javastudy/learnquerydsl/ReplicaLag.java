@@ -0,0 +1,15 @@
+package org.javastudy.learnquerydsl;
+
+/**
+ * How far reads may trail writes once read-only transactions go to a replica, see {@link ReplicaRoutingConfig}.
+ * There is no bean of this type without a replica, where every read sees every committed write.
+ */
+@FunctionalInterface
+public interface ReplicaLag {
+
+    /**
+     * Whether a read-only transaction begun now may read from a replica that has not yet applied a write
+     * committed at {@code committedAtMillis}.
+     */
+    boolean mayMiss(long committedAtMillis);
+}
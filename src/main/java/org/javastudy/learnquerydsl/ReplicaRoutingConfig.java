@@ -0,0 +1,168 @@
+package org.javastudy.learnquerydsl;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Read/write splitting, active once {@code spring.datasource.replica.url} is set: read-only transactions,
+ * such as every repository read, go to the replica, all others to the primary {@code spring.datasource}.
+ * See {@link ReplicaRoutingDataSource} for the routing rules and {@code spring.datasource.replica.max-lag}.
+ * <p>
+ * Both pools are Hikari pools configured from {@code spring.datasource.hikari} and
+ * {@code spring.datasource.replica.hikari}. Only the routing data source is a bean, so the p6spy decorator
+ * logs and counts every statement once, whichever database runs it.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "spring.datasource.replica", name = "url")
+public class ReplicaRoutingConfig {
+
+    private final ReplicaRoutingDataSource routingDataSource;
+
+    public ReplicaRoutingConfig(DataSourceProperties primaryProperties, Environment environment,
+                                @Value("${spring.datasource.replica.max-lag:1s}") Duration maxLag) {
+
+        Binder binder = Binder.get(environment);
+        DataSourceProperties replicaProperties = binder
+                .bind("spring.datasource.replica", Bindable.of(DataSourceProperties.class))
+                .get();
+
+        HikariDataSource primary = primaryProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName("primary");
+
+        HikariDataSource replica = replicaProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        binder.bind("spring.datasource.replica.hikari", Bindable.ofInstance(replica));
+        replica.setPoolName("replica");
+        replica.setReadOnly(true);
+
+        this.routingDataSource = new ReplicaRoutingDataSource(primary, replica, maxLag);
+    }
+
+    @Bean
+    public DataSource dataSource() {
+        return routingDataSource;
+    }
+
+    /**
+     * A separate object, so that it is not a second {@link DataSource} bean.
+     */
+    @Bean
+    public ReplicaLag replicaLag() {
+        return routingDataSource::mayMiss;
+    }
+
+    /**
+     * For the in-memory projections, which load once and then only follow the writes committed after their
+     * load: a load from a lagging replica would miss the writes in between for good.
+     */
+    @Bean
+    public PrimaryReads primaryReads(PlatformTransactionManager transactionManager) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.setReadOnly(true);
+        return new PrimaryReads() {
+            @Override
+            public <T> T call(Supplier<T> reads) {
+                return routingDataSource.onPrimary(() -> template.execute(status -> reads.get()));
+            }
+        };
+    }
+
+    /**
+     * Picked up by executors that run work of a request on other threads, such as {@code MemberSearchExecutor}.
+     */
+    @Bean
+    public TaskDecorator replicaRoutingTaskDecorator() {
+        return routingDataSource::carryLastWrite;
+    }
+
+    @Bean
+    public ReplicaRoutingFilter replicaRoutingFilter() {
+        return new ReplicaRoutingFilter(routingDataSource);
+    }
+
+    @Bean
+    public JpaTransactionManager transactionManager(ObjectProvider<TransactionManagerCustomizers> customizers) {
+        JpaTransactionManager transactionManager = new RoutingJpaTransactionManager(routingDataSource);
+        customizers.ifAvailable(available -> available.customize(transactionManager));
+        return transactionManager;
+    }
+
+    /**
+     * By default Hibernate holds a connection until the EntityManager closes, which with open-in-view is the
+     * end of the request; releasing it after every transaction lets each transaction be routed on its own.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    /**
+     * Runs after the EntityManagerFactory, which depends on the data source, has been closed.
+     */
+    @PreDestroy
+    public void closePools() throws Exception {
+        routingDataSource.close();
+    }
+
+    /**
+     * Tells the routing whether a transaction is read-only before Hibernate takes its connection.
+     */
+    static class RoutingJpaTransactionManager extends JpaTransactionManager {
+
+        private final ReplicaRoutingDataSource routingDataSource;
+
+        RoutingJpaTransactionManager(ReplicaRoutingDataSource routingDataSource) {
+            this.routingDataSource = routingDataSource;
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            routingDataSource.transactionBegun(definition.isReadOnly());
+            try {
+                super.doBegin(transaction, definition);
+            }
+            catch (RuntimeException | Error e) {
+                // no cleanup follows a failed begin
+                routingDataSource.transactionEnded();
+                throw e;
+            }
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            super.doCommit(status);
+            routingDataSource.transactionCommitted(status.isReadOnly());
+        }
+
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            super.doCleanupAfterCompletion(transaction);
+            routingDataSource.transactionEnded();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.javastudy.learnquerydsl;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Sends read-only transactions to the replica and everything else to the primary.
+ * <p>
+ * The target is chosen when a connection is taken, which Hibernate does while the transaction is still
+ * beginning, before Spring publishes its read-only flag. The transaction manager therefore reports every
+ * transaction it begins, commits and ends here, see {@link ReplicaRoutingConfig}. Connections taken outside
+ * a transaction go to the primary.
+ * <p>
+ * The replica may lag behind. For {@code maxLag} after a read-write transaction commits, read-only
+ * transactions of the same HTTP request, or of the same thread outside requests, still read from the
+ * primary, and so do those of the client's later requests: the response carries the time of the write in
+ * the {@value #LAST_WRITE_COOKIE} cookie, which expires with the lag. {@link ReplicaRoutingFilter} reads the
+ * cookie when a request starts and forgets the request's writes when it ends, so they never carry over to
+ * the next request on the same pooled thread.
+ * <p>
+ * Tasks handed to other threads carry the last write along through {@link #carryLastWrite(Runnable)}.
+ * Transactions begun inside {@link #onPrimary(Supplier)} go to the primary even when read-only.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    public enum Target { PRIMARY, REPLICA }
+
+    static final String LAST_WRITE_COOKIE = "last-write";
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long maxLagMillis;
+    // the last write of the current request, or of the current thread outside requests
+    private final ThreadLocal<Long> lastWrite = new ThreadLocal<>();
+    private final ThreadLocal<HttpServletResponse> response = new ThreadLocal<>();
+    // read-only flags of the transactions begun on this thread, innermost first; REQUIRES_NEW nests them
+    private final ThreadLocal<Deque<Boolean>> transactions = ThreadLocal.withInitial(ArrayDeque::new);
+    private final ThreadLocal<Boolean> primaryOnly = new ThreadLocal<>();
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, Duration maxLag) {
+        this.primary = primary;
+        this.replica = replica;
+        this.maxLagMillis = maxLag.toMillis();
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Boolean readOnly = transactions.get().peek();
+        return (readOnly != null && readOnly && !recentlyWrote()) ? Target.REPLICA : Target.PRIMARY;
+    }
+
+    /**
+     * @see ReplicaLag#mayMiss(long)
+     */
+    public boolean mayMiss(long committedAtMillis) {
+        return System.currentTimeMillis() - committedAtMillis < maxLagMillis && !recentlyWrote();
+    }
+
+    /**
+     * Runs {@code reads}, sending the transactions it begins to the primary.
+     */
+    public <T> T onPrimary(Supplier<T> reads) {
+        Boolean outer = primaryOnly.get();
+        primaryOnly.set(Boolean.TRUE);
+        try {
+            return reads.get();
+        }
+        finally {
+            if (outer == null) {
+                primaryOnly.remove();
+            }
+        }
+    }
+
+    /**
+     * Wraps {@code task} to run with the last write of the calling thread, so that a task the request hands to
+     * another thread reads what the request's client wrote.
+     */
+    public Runnable carryLastWrite(Runnable task) {
+        Long write = lastWrite.get();
+        if (write == null) {
+            return task;
+        }
+        return () -> {
+            lastWrite.set(write);
+            try {
+                task.run();
+            }
+            finally {
+                lastWrite.remove();
+            }
+        };
+    }
+
+    void requestStarted(HttpServletRequest request, HttpServletResponse response) {
+        this.response.set(response);
+        Long clientWrite = lastWriteOf(request);
+        if (clientWrite != null) {
+            lastWrite.set(clientWrite);
+        }
+        else {
+            lastWrite.remove();
+        }
+    }
+
+    void requestEnded() {
+        lastWrite.remove();
+        response.remove();
+    }
+
+    void transactionBegun(boolean readOnly) {
+        transactions.get().push(readOnly && primaryOnly.get() == null);
+    }
+
+    void transactionCommitted(boolean readOnly) {
+        if (!readOnly) {
+            recordWrite();
+        }
+    }
+
+    void transactionEnded() {
+        transactions.get().poll();
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (DataSource target : new DataSource[] { primary, replica }) {
+            if (target instanceof AutoCloseable) {
+                ((AutoCloseable) target).close();
+            }
+        }
+    }
+
+    private void recordWrite() {
+        long now = System.currentTimeMillis();
+        lastWrite.set(now);
+        HttpServletResponse current = response.get();
+        if (current != null && !current.isCommitted()) {
+            Cookie cookie = new Cookie(LAST_WRITE_COOKIE, Long.toString(now));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, (maxLagMillis + 999) / 1000));
+            current.addCookie(cookie);
+        }
+    }
+
+    private boolean recentlyWrote() {
+        Long last = lastWrite.get();
+        return last != null && System.currentTimeMillis() - last < maxLagMillis;
+    }
+
+    /**
+     * The write time the client sent back, never later than now, so a forged cookie cannot keep its reads
+     * on the primary beyond {@code maxLag}.
+     */
+    private static Long lastWriteOf(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (LAST_WRITE_COOKIE.equals(cookie.getName())) {
+                try {
+                    return Math.min(Long.parseLong(cookie.getValue()), System.currentTimeMillis());
+                }
+                catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,35 @@
+package org.javastudy.learnquerydsl;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Scopes the writes {@link ReplicaRoutingDataSource} remembers to one request: it starts from the client's
+ * last-write cookie and forgets everything once the request ends.
+ */
+public class ReplicaRoutingFilter extends OncePerRequestFilter {
+
+    private final ReplicaRoutingDataSource routingDataSource;
+
+    public ReplicaRoutingFilter(ReplicaRoutingDataSource routingDataSource) {
+        this.routingDataSource = routingDataSource;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        routingDataSource.requestStarted(request, response);
+        try {
+            chain.doFilter(request, response);
+        }
+        finally {
+            routingDataSource.requestEnded();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.javastudy.learnquerydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.javastudy.learnquerydsl.metrics.CacheRegionMetrics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Statistics of the Hibernate second-level and query cache regions.
+ */
+@RestController
+@RequestMapping("/metrics/cache-regions")
+@RequiredArgsConstructor
+public class CacheMetricsController {
+
+    private final CacheRegionMetrics cacheRegionMetrics;
+
+    @GetMapping
+    public List<CacheRegionMetrics.RegionStats> cacheRegions() {
+        return cacheRegionMetrics.snapshot();
+    }
+}
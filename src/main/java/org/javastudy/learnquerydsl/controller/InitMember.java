@@ -1,38 +1,40 @@
 package org.javastudy.learnquerydsl.controller;
 
-import lombok.RequiredArgsConstructor;
-import org.javastudy.learnquerydsl.entity.Member;
-import org.javastudy.learnquerydsl.entity.Team;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.javastudy.learnquerydsl.repository.MemberBulkLoader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
-import javax.persistence.PersistenceUnit;
+import java.util.List;
 
+/**
+ * Seeds the local profile through {@link MemberBulkLoader}. With the defaults this is the same data as ever:
+ * teamA and teamB, and member0..member99 aged 0..99, alternating between the two teams. Beyond 100 members
+ * the ages repeat.
+ * <p>
+ * Runs once the application is ready, after every post-commit listener (team statistics, search snapshot,
+ * username index) has registered, so they all see the seed.
+ */
 @Profile("local")
 @Component
-@RequiredArgsConstructor
 public class InitMember {
 
-    static class InitMemberService {
+    private final MemberBulkLoader memberBulkLoader;
+    private final int memberCount;
+    private final List<String> teamNames;
 
-        @PersistenceContext
-        private EntityManager em;
-
-        @Transactional
-        public void init() {
-            Team teamA = new Team("teamA");
-            Team teamB = new Team("teamB");
-            em.persist(teamA);
-            em.persist(teamB);
+    public InitMember(MemberBulkLoader memberBulkLoader,
+                      @Value("${member.init.count:100}") int memberCount,
+                      @Value("${member.init.teams:teamA,teamB}") String[] teamNames) {
+        this.memberBulkLoader = memberBulkLoader;
+        this.memberCount = memberCount;
+        this.teamNames = List.of(teamNames);
+    }
 
-            for (int i = 0; i < 100; i++) {
-                Team selectedTeam = i % 2 == 0 ? teamA : teamB;
-                em.persist(new Member("member" + i, i, selectedTeam));
-            }
-        }
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        memberBulkLoader.load(memberCount, teamNames);
     }
 }
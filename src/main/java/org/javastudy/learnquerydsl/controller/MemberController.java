@@ -1,16 +1,45 @@
 package org.javastudy.learnquerydsl.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.javastudy.learnquerydsl.ReplicaLag;
+import org.javastudy.learnquerydsl.dto.InvalidCursorException;
+import org.javastudy.learnquerydsl.dto.MemberCountEstimate;
+import org.javastudy.learnquerydsl.dto.MemberCursorPage;
 import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberSearchCursor;
+import org.javastudy.learnquerydsl.dto.MemberSortKey;
 import org.javastudy.learnquerydsl.dto.MemberTeamDto;
 import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.repository.MemberDataVersion;
 import org.javastudy.learnquerydsl.repository.MemberJpaRepository;
+import org.javastudy.learnquerydsl.repository.MemberSearchQueryCache;
+import org.javastudy.learnquerydsl.repository.MemberSearchResultCache;
+import org.javastudy.learnquerydsl.repository.MemberSearchSnapshot;
+import org.javastudy.learnquerydsl.repository.MemberSearchStatistics;
+import org.javastudy.learnquerydsl.repository.MemberUsernameIndex;
+import org.javastudy.learnquerydsl.search.MemberSearchExecutor;
+import org.javastudy.learnquerydsl.search.MemberSearchRejectedException;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/members")
@@ -18,9 +47,139 @@ import java.util.List;
 public class MemberController {
 
     private final MemberJpaRepository memberJpaRepository;
+    private final MemberSearchQueryCache searchQueryCache;
+    private final MemberSearchResultCache searchResultCache;
+    private final MemberSearchExecutor searchExecutor;
+    private final MemberSearchSnapshot searchSnapshot;
+    private final MemberUsernameIndex usernameIndex;
+    private final MemberSearchStatistics searchStatistics;
+    private final MemberDataVersion dataVersion;
+    private final ObjectProvider<ReplicaLag> replicaLag;
 
+    /**
+     * Keyset paginated like v2, in member id order, but the body holds only the rows: the next page, if any,
+     * is linked from the {@code Link} header with {@code rel="next"}. Without {@code size} a page holds
+     * {@link MemberJpaRepository#MAX_PAGE_SIZE} members, so no request returns the whole table.
+     * <p>
+     * The response carries an ETag made of the {@link MemberDataVersion}, the normalized condition and the page; a poll
+     * whose {@code If-None-Match} still matches is answered 304 without a query. While a replica may not have
+     * caught up with the latest write, the rows may predate the version, so there is no ETag.
+     */
     @GetMapping
-    public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition) {
-        return memberJpaRepository.search(condition);
+    public ResponseEntity<List<MemberTeamDto>> searchMemberV1(
+            MemberSearchCondition condition,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + MemberJpaRepository.MAX_PAGE_SIZE) int size,
+            WebRequest request) {
+
+        String etag = searchEtag(condition, cursor, size);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+
+        MemberSearchCursor after = (cursor == null || cursor.isEmpty()) ? null : MemberSearchCursor.decode(cursor);
+        MemberCursorPage page = memberJpaRepository.searchByCursor(condition, after, MemberSortKey.ID, size);
+        if (!page.isHasNext()) {
+            return ResponseEntity.ok(page.getContent());
+        }
+        String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("cursor", page.getNextCursor())
+                .toUriString();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"")
+                .body(page.getContent());
+    }
+
+    /**
+     * Weak, since compressed and uncompressed responses differ in bytes but not in content.
+     */
+    private String searchEtag(MemberSearchCondition condition, String cursor, int size) {
+        ReplicaLag lag = replicaLag.getIfAvailable();
+        if (lag != null && lag.mayMiss(dataVersion.getChangedAtMillis())) {
+            return null;
+        }
+        String search = condition.normalized() + " cursor=" + cursor + " size=" + size;
+        return "W/\"" + dataVersion.getEpoch() + '-' + dataVersion.current() + '-'
+                + DigestUtils.md5DigestAsHex(search.getBytes(StandardCharsets.UTF_8)) + '"';
+    }
+
+    /**
+     * The whole result of {@link MemberJpaRepository#search(MemberSearchCondition)}, run on
+     * {@link MemberSearchExecutor} while the servlet thread is released. Answers 503 right away when too many
+     * searches are already running or waiting.
+     */
+    @GetMapping("/async")
+    public CompletableFuture<List<MemberTeamDto>> searchMemberAsync(MemberSearchCondition condition) {
+        return searchExecutor.search(condition);
+    }
+
+    /**
+     * Keyset paginated search. Pass the {@code nextCursor} of a page as {@code cursor} to get the next one.
+     */
+    @GetMapping("/v2")
+    public MemberCursorPage searchMemberV2(MemberSearchCondition condition,
+                                           @RequestParam(required = false) String cursor,
+                                           @RequestParam(defaultValue = "ID") MemberSortKey sort,
+                                           @RequestParam(defaultValue = "" + MemberJpaRepository.DEFAULT_PAGE_SIZE) int size) {
+
+        MemberSearchCursor after = (cursor == null || cursor.isEmpty()) ? null : MemberSearchCursor.decode(cursor);
+        return memberJpaRepository.searchByCursor(condition, after, sort, size);
+    }
+
+    @GetMapping("/v3")
+    public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable) {
+        return memberJpaRepository.searchPage(condition, pageable);
+    }
+
+    /**
+     * "About N results": estimated unless the count is small or the condition has a username, see
+     * {@link MemberJpaRepository#searchCountEstimate(MemberSearchCondition)}.
+     */
+    @GetMapping("/count")
+    public MemberCountEstimate countMembers(MemberSearchCondition condition) {
+        return memberJpaRepository.searchCountEstimate(condition);
+    }
+
+    @GetMapping("/stats/query-shapes")
+    public MemberSearchQueryCache.Stats queryShapeStats() {
+        return searchQueryCache.getStats();
+    }
+
+    @GetMapping("/stats/result-cache")
+    public MemberSearchResultCache.Stats resultCacheStats() {
+        return searchResultCache.getStats();
+    }
+
+    @GetMapping("/stats/async-search")
+    public MemberSearchExecutor.Stats asyncSearchStats() {
+        return searchExecutor.getStats();
+    }
+
+    @GetMapping("/stats/search-statistics")
+    public MemberSearchStatistics.Stats searchStatisticsStats() {
+        return searchStatistics.getStats();
+    }
+
+    @GetMapping("/stats/search-snapshot")
+    public MemberSearchSnapshot.Stats searchSnapshotStats() {
+        return searchSnapshot.getStats();
+    }
+
+    @GetMapping("/stats/username-index")
+    public MemberUsernameIndex.Stats usernameIndexStats() {
+        return usernameIndex.getStats();
+    }
+
+    @ExceptionHandler(MemberSearchRejectedException.class)
+    public ResponseEntity<Map<String, String>> searchRejected(MemberSearchRejectedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("message", e.getMessage()));
+    }
+
+    @ExceptionHandler(InvalidCursorException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, String> invalidCursor(InvalidCursorException e) {
+        return Map.of("message", "invalid cursor");
     }
 }
@@ -0,0 +1,70 @@
+package org.javastudy.learnquerydsl.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.javastudy.learnquerydsl.repository.MemberJpaRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Exports member search results as newline-delimited JSON (one MemberTeamDto per line).
+ * Rows are written to the response as they are read from the database, nothing is collected in memory.
+ */
+@RestController
+@RequestMapping("/members")
+public class MemberExportController {
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private final MemberJpaRepository memberJpaRepository;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    public MemberExportController(MemberJpaRepository memberJpaRepository,
+                                  ObjectMapper objectMapper,
+                                  @Value("${member.export.fetch-size:500}") int fetchSize) {
+        this.memberJpaRepository = memberJpaRepository;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+    }
+
+    @GetMapping(value = "/export", produces = APPLICATION_NDJSON_VALUE)
+    public void export(MemberSearchCondition condition, HttpServletResponse response) throws IOException {
+
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+
+        // flushing after every row would turn each row into its own chunk on the wire
+        ObjectWriter rowWriter = objectMapper
+                .writerFor(MemberTeamDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setRootValueSeparator(null);
+            memberJpaRepository.streamSearch(condition, fetchSize, row -> writeRow(rowWriter, generator, row));
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeRow(ObjectWriter rowWriter, JsonGenerator generator, MemberTeamDto row) {
+        try {
+            rowWriter.writeValue(generator, row);
+            generator.writeRaw('\n');
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
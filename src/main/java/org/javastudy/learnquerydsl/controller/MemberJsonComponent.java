@@ -0,0 +1,86 @@
+package org.javastudy.learnquerydsl.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.javastudy.learnquerydsl.dto.MemberDto;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+
+/**
+ * Hand-written serializers for the rows of large member responses, registered with Boot's ObjectMapper.
+ * <p>
+ * Jackson's default bean serializer finds the properties of a {@code @Data} class by introspection and writes
+ * every field through a property writer that calls its getter reflectively or through generated accessors.
+ * These write the fields straight to the generator instead, in the same order and with the same names and
+ * null handling, so the JSON does not change. The field names are {@link SerializedString}s, whose quoted
+ * and encoded bytes are computed once and then copied into the output.
+ * <p>
+ * They apply wherever Jackson meets these types, including list responses and the rows of /members/export.
+ * Mapper-wide settings that change how properties are written, such as a non-null inclusion or a naming
+ * strategy, are not applied to these two types.
+ */
+@JsonComponent
+public class MemberJsonComponent {
+
+    public static class MemberTeamDtoSerializer extends StdSerializer<MemberTeamDto> {
+
+        private static final SerializedString MEMBER_ID = new SerializedString("memberId");
+        private static final SerializedString USERNAME = new SerializedString("username");
+        private static final SerializedString AGE = new SerializedString("age");
+        private static final SerializedString TEAM_ID = new SerializedString("teamId");
+        private static final SerializedString TEAM_NAME = new SerializedString("teamName");
+
+        public MemberTeamDtoSerializer() {
+            super(MemberTeamDto.class);
+        }
+
+        @Override
+        public void serialize(MemberTeamDto value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(value);
+            gen.writeFieldName(MEMBER_ID);
+            writeLong(gen, value.getMemberId());
+            gen.writeFieldName(USERNAME);
+            gen.writeString(value.getUsername());
+            gen.writeFieldName(AGE);
+            gen.writeNumber(value.getAge());
+            gen.writeFieldName(TEAM_ID);
+            writeLong(gen, value.getTeamId());
+            gen.writeFieldName(TEAM_NAME);
+            gen.writeString(value.getTeamName());
+            gen.writeEndObject();
+        }
+    }
+
+    public static class MemberDtoSerializer extends StdSerializer<MemberDto> {
+
+        private static final SerializedString USERNAME = new SerializedString("username");
+        private static final SerializedString AGE = new SerializedString("age");
+
+        public MemberDtoSerializer() {
+            super(MemberDto.class);
+        }
+
+        @Override
+        public void serialize(MemberDto value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(value);
+            gen.writeFieldName(USERNAME);
+            gen.writeString(value.getUsername());
+            gen.writeFieldName(AGE);
+            gen.writeNumber(value.getAge());
+            gen.writeEndObject();
+        }
+    }
+
+    private static void writeLong(JsonGenerator gen, Long value) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+        }
+        else {
+            gen.writeNumber(value.longValue());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.javastudy.learnquerydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.javastudy.learnquerydsl.metrics.QueryMetricsRegistry;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Per query shape repository metrics. Empty unless {@code query.metrics.enabled=true}.
+ */
+@RestController
+@RequestMapping("/metrics/queries")
+@RequiredArgsConstructor
+public class QueryMetricsController {
+
+    private final QueryMetricsRegistry queryMetricsRegistry;
+
+    @GetMapping
+    public List<QueryMetricsRegistry.QueryShapeStats> queryMetrics() {
+        return queryMetricsRegistry.snapshot();
+    }
+
+    @DeleteMapping
+    public void resetQueryMetrics() {
+        queryMetricsRegistry.reset();
+    }
+}
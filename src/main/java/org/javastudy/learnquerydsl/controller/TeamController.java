@@ -0,0 +1,44 @@
+package org.javastudy.learnquerydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.javastudy.learnquerydsl.dto.TeamMembersDto;
+import org.javastudy.learnquerydsl.dto.TeamStatsDto;
+import org.javastudy.learnquerydsl.repository.TeamJpaRepository;
+import org.javastudy.learnquerydsl.repository.TeamStatistics;
+import org.springframework.data.domain.Pageable;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/teams")
+@RequiredArgsConstructor
+public class TeamController {
+
+    private final TeamJpaRepository teamJpaRepository;
+    private final TeamStatistics teamStatistics;
+
+    /**
+     * Teams with their members in three queries, see {@link TeamJpaRepository#findTeamsWithMembers(Pageable)}.
+     */
+    @GetMapping
+    public List<TeamMembersDto> teams(Pageable pageable) {
+        return teamJpaRepository.findTeamsWithMembers(pageable);
+    }
+
+    /**
+     * Member count and age aggregates per team, served from {@link TeamStatistics} without a GROUP BY.
+     */
+    @GetMapping("/stats")
+    public List<TeamStatsDto> teamStats() {
+        return teamStatistics.snapshot();
+    }
+
+    @PostMapping("/stats/reconcile")
+    public TeamStatistics.Reconciliation reconcileTeamStats() {
+        return teamStatistics.reconcile();
+    }
+}
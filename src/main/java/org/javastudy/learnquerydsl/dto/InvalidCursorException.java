@@ -0,0 +1,11 @@
+package org.javastudy.learnquerydsl.dto;
+
+/**
+ * A cursor token that was not produced by {@link MemberSearchCursor#encode()}.
+ */
+public class InvalidCursorException extends IllegalArgumentException {
+
+    public InvalidCursorException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,36 @@
+package org.javastudy.learnquerydsl.dto;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Number of members matching a {@link MemberSearchCondition}, either counted exactly or estimated.
+ * An estimate is guaranteed to lie within {@code lowerBound..upperBound} as of the statistics it was made from.
+ */
+@Getter
+@ToString
+public class MemberCountEstimate {
+
+    private final long count;
+    private final long lowerBound;
+    private final long upperBound;
+    private final boolean exact;
+
+    public MemberCountEstimate(long count, long lowerBound, long upperBound, boolean exact) {
+        this.count = count;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.exact = exact;
+    }
+
+    public static MemberCountEstimate exact(long count) {
+        return new MemberCountEstimate(count, count, count, true);
+    }
+
+    /**
+     * The most {@code count} can be off by.
+     */
+    public long getErrorBound() {
+        return Math.max(count - lowerBound, upperBound - count);
+    }
+}
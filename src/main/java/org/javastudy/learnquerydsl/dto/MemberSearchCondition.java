@@ -6,7 +6,36 @@ import lombok.Data;
 public class MemberSearchCondition {
 
     private String username;
+    private String usernameStartsWith;
+    private String usernameContains;
     private String teamName;
     private Integer ageGoe;
     private Integer ageLoe;
+
+    /**
+     * A copy in which an empty username filter or team name, which every search ignores, is null;
+     * equal for conditions that match the same members by the same predicates.
+     */
+    public MemberSearchCondition normalized() {
+        MemberSearchCondition normalized = new MemberSearchCondition();
+        normalized.setUsername(emptyToNull(username));
+        normalized.setUsernameStartsWith(emptyToNull(usernameStartsWith));
+        normalized.setUsernameContains(emptyToNull(usernameContains));
+        normalized.setTeamName(emptyToNull(teamName));
+        normalized.setAgeGoe(ageGoe);
+        normalized.setAgeLoe(ageLoe);
+        return normalized;
+    }
+
+    /**
+     * Whether any of the username filters is present.
+     */
+    public boolean hasUsernameFilter() {
+        return emptyToNull(username) != null || emptyToNull(usernameStartsWith) != null
+                || emptyToNull(usernameContains) != null;
+    }
+
+    private static String emptyToNull(String value) {
+        return (value == null || value.length() == 0) ? null : value;
+    }
 }
@@ -0,0 +1,67 @@
+package org.javastudy.learnquerydsl.dto;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of the last row of a keyset page.
+ * Clients only see the opaque token produced by {@link #encode()}.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public class MemberSearchCursor {
+
+    private static final String VERSION = "v1";
+
+    private final MemberSortKey sortKey;
+    private final Integer lastAge;
+    private final Long lastId;
+
+    private MemberSearchCursor(MemberSortKey sortKey, Integer lastAge, Long lastId) {
+        this.sortKey = sortKey;
+        this.lastAge = lastAge;
+        this.lastId = lastId;
+    }
+
+    public static MemberSearchCursor after(MemberSortKey sortKey, MemberTeamDto lastRow) {
+        Integer lastAge = (sortKey == MemberSortKey.AGE) ? lastRow.getAge() : null;
+        return new MemberSearchCursor(sortKey, lastAge, lastRow.getMemberId());
+    }
+
+    public String encode() {
+        String raw = VERSION + ":" + sortKey.name() + ":" + (lastAge == null ? "" : lastAge) + ":" + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws InvalidCursorException if the token was not produced by {@link #encode()}
+     */
+    public static MemberSearchCursor decode(String token) {
+
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", -1);
+            if (parts.length != 4 || !VERSION.equals(parts[0])) {
+                throw new IllegalArgumentException("unknown cursor version");
+            }
+
+            MemberSortKey sortKey = MemberSortKey.valueOf(parts[1]);
+            Integer lastAge = parts[2].isEmpty() ? null : Integer.valueOf(parts[2]);
+            Long lastId = Long.valueOf(parts[3]);
+            if ((sortKey == MemberSortKey.AGE) != (lastAge != null)) {
+                throw new IllegalArgumentException("sort key and last age disagree");
+            }
+            return new MemberSearchCursor(sortKey, lastAge, lastId);
+        }
+        catch (IllegalArgumentException e) {
+            // NumberFormatException and bad Base64 input are IllegalArgumentExceptions too
+            // never the token itself, which is client input
+            throw new InvalidCursorException("invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.javastudy.learnquerydsl.dto;
+
+/**
+ * Sort orders supported by keyset (cursor) pagination.
+ * Every order ends with member.id so that the position of a row is unique.
+ */
+public enum MemberSortKey {
+
+    /** order by member.id asc */
+    ID,
+
+    /** order by member.age asc, member.id asc */
+    AGE
+}
@@ -0,0 +1,31 @@
+package org.javastudy.learnquerydsl.dto;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * A team with its members in member id order. {@code members} holds at most a configured number of them,
+ * {@code memberCount} counts them all.
+ */
+@Getter
+@ToString
+public class TeamMembersDto {
+
+    private final Long teamId;
+    private final String teamName;
+    private final long memberCount;
+    private final List<MemberDto> members;
+
+    public TeamMembersDto(Long teamId, String teamName, long memberCount, List<MemberDto> members) {
+        this.teamId = teamId;
+        this.teamName = teamName;
+        this.memberCount = memberCount;
+        this.members = members;
+    }
+
+    public boolean isTruncated() {
+        return members.size() < memberCount;
+    }
+}
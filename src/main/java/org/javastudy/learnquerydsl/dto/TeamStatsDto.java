@@ -0,0 +1,33 @@
+package org.javastudy.learnquerydsl.dto;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Member count and age aggregates of one team. {@code avgAge}, {@code minAge} and {@code maxAge}
+ * are null for a team without members, like the GROUP BY aggregates they stand in for.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class TeamStatsDto {
+
+    private final Long teamId;
+    private final String teamName;
+    private final long memberCount;
+    private final long ageSum;
+    private final Double avgAge;
+    private final Integer minAge;
+    private final Integer maxAge;
+
+    public TeamStatsDto(Long teamId, String teamName, long memberCount, long ageSum, Integer minAge, Integer maxAge) {
+        this.teamId = teamId;
+        this.teamName = teamName;
+        this.memberCount = memberCount;
+        this.ageSum = ageSum;
+        this.avgAge = (memberCount == 0) ? null : (double) ageSum / memberCount;
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+    }
+}
@@ -8,6 +8,14 @@ import lombok.ToString;
 import javax.persistence.*;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_member_username", columnList = "username"),
+        @Index(name = "idx_member_age", columnList = "age"),
+        // team + age range, and with username/id also every member column of MemberTeamDto
+        @Index(name = "idx_member_team_age", columnList = "team_id, age, username, id")
+})
+@EntityListeners(MemberDataListener.class)
+@NamedEntityGraph(name = "Member.team", attributeNodes = @NamedAttributeNode("team"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -15,7 +23,8 @@ import javax.persistence.*;
 public class Member {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "member_seq_generator")
+    @SequenceGenerator(name = "member_seq_generator", sequenceName = "member_seq", allocationSize = 50)
     private Long id;
 
     private String username;
@@ -33,6 +42,9 @@ public class Member {
     public Member(String username, int age, Team team) {
         this.username = username;
         this.age = age;
+        if (team != null) {
+            changeTeam(team);
+        }
     }
 
     public void changeTeam(Team team) {
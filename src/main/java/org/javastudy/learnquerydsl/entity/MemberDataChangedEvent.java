@@ -0,0 +1,36 @@
+package org.javastudy.learnquerydsl.entity;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Published whenever member or team data is written, so that anything derived from it
+ * (caches, counters, snapshots) can be invalidated.
+ * <p>
+ * Entity writes are reported by {@link MemberDataListener} when they are flushed;
+ * bulk JPQL updates and deletes bypass entity callbacks and must publish {@link #bulk(Class)} themselves.
+ */
+@Getter
+@ToString
+public class MemberDataChangedEvent {
+
+    public enum Type { PERSIST, UPDATE, REMOVE, BULK }
+
+    private final Type type;
+    private final Class<?> entityType;
+    private final Object entity;
+
+    private MemberDataChangedEvent(Type type, Class<?> entityType, Object entity) {
+        this.type = type;
+        this.entityType = entityType;
+        this.entity = entity;
+    }
+
+    public static MemberDataChangedEvent of(Type type, Object entity) {
+        return new MemberDataChangedEvent(type, entity.getClass(), entity);
+    }
+
+    public static MemberDataChangedEvent bulk(Class<?> entityType) {
+        return new MemberDataChangedEvent(Type.BULK, entityType, null);
+    }
+}
@@ -0,0 +1,35 @@
+package org.javastudy.learnquerydsl.entity;
+
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * JPA entity listener of {@link Member} and {@link Team}. Hibernate obtains it from the
+ * Spring bean container, so the publisher is injected.
+ */
+public class MemberDataListener {
+
+    private final ApplicationEventPublisher publisher;
+
+    public MemberDataListener(ApplicationEventPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @PostPersist
+    public void afterPersist(Object entity) {
+        publisher.publishEvent(MemberDataChangedEvent.of(MemberDataChangedEvent.Type.PERSIST, entity));
+    }
+
+    @PostUpdate
+    public void afterUpdate(Object entity) {
+        publisher.publishEvent(MemberDataChangedEvent.of(MemberDataChangedEvent.Type.UPDATE, entity));
+    }
+
+    @PostRemove
+    public void afterRemove(Object entity) {
+        publisher.publishEvent(MemberDataChangedEvent.of(MemberDataChangedEvent.Type.REMOVE, entity));
+    }
+}
@@ -4,24 +4,35 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@Table(indexes = @Index(name = "idx_team_name", columnList = "name, id"))
+@EntityListeners(MemberDataListener.class)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Team.CACHE_REGION)
 @Getter
 @Setter
 @NoArgsConstructor
 @ToString(of = { "id", "name" })
 public class Team {
 
+    public static final String CACHE_REGION = "team";
+
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "team_seq_generator")
+    @SequenceGenerator(name = "team_seq_generator", sequenceName = "team_seq", allocationSize = 50)
     private Long id;
 
     private String name;
 
+    // touching getMembers() of one team initializes those of up to 100 loaded teams with one IN query
+    @BatchSize(size = 100)
     @OneToMany(mappedBy = "team")
     private final List<Member> members = new ArrayList<>();
 
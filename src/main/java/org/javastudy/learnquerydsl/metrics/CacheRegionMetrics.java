@@ -0,0 +1,66 @@
+package org.javastudy.learnquerydsl.metrics;
+
+import lombok.Getter;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+
+import javax.cache.CacheManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Hit, miss and put counts of every Hibernate second-level cache region, see SecondLevelCacheConfig.
+ * Regions are listed from the cache manager, because Hibernate only creates a query region on its first use.
+ */
+@Component
+public class CacheRegionMetrics {
+
+    private final Statistics statistics;
+    private final CacheManager hibernateCacheManager;
+
+    public CacheRegionMetrics(EntityManagerFactory emf, CacheManager hibernateCacheManager) {
+        this.statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        this.hibernateCacheManager = hibernateCacheManager;
+    }
+
+    public List<RegionStats> snapshot() {
+        List<RegionStats> regions = new ArrayList<>();
+        for (String regionName : hibernateCacheManager.getCacheNames()) {
+            regions.add(region(regionName));
+        }
+        regions.sort(Comparator.comparing(RegionStats::getRegion));
+        return regions;
+    }
+
+    public RegionStats region(String regionName) {
+        CacheRegionStatistics region = statistics.getCacheRegionStatistics(regionName);
+        if (region == null) {
+            // configured, but not used yet
+            return new RegionStats(regionName, 0, 0, 0);
+        }
+        return new RegionStats(regionName, region.getHitCount(), region.getMissCount(), region.getPutCount());
+    }
+
+    @Getter
+    public static class RegionStats {
+
+        private final String region;
+        private final long hits;
+        private final long misses;
+        private final long puts;
+        private final double hitRate;
+
+        public RegionStats(String region, long hits, long misses, long puts) {
+            this.region = region;
+            this.hits = hits;
+            this.misses = misses;
+            this.puts = puts;
+            long lookups = hits + misses;
+            this.hitRate = (lookups == 0) ? 0 : (double) hits / lookups;
+        }
+    }
+}
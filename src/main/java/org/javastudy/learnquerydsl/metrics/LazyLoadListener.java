@@ -0,0 +1,51 @@
+package org.javastudy.learnquerydsl.metrics;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEvent;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.LoadEvent;
+import org.hibernate.event.spi.LoadEventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Reports every lazy initialization, i.e. an uninitialized proxy such as Member.team or a
+ * collection such as Team.members being touched, to the current {@link QueryBudget}.
+ * Runs before Hibernate's own listeners, so a failing budget stops the load before its SELECT.
+ */
+@Component
+public class LazyLoadListener implements LoadEventListener, InitializeCollectionEventListener {
+
+    private final EntityManagerFactory emf;
+
+    public LazyLoadListener(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.prependListeners(EventType.LOAD, this);
+        registry.prependListeners(EventType.INIT_COLLECTION, this);
+    }
+
+    @Override
+    public void onLoad(LoadEvent event, LoadType loadType) throws HibernateException {
+        // proxies are initialized through Session#immediateLoad
+        if (loadType == LoadEventListener.IMMEDIATE_LOAD) {
+            QueryBudget.onLazyLoad(event.getEntityClassName() + "#" + event.getEntityId());
+        }
+    }
+
+    @Override
+    public void onInitializeCollection(InitializeCollectionEvent event) throws HibernateException {
+        QueryBudget.onLazyLoad(event.getCollection().getRole());
+    }
+}
@@ -0,0 +1,108 @@
+package org.javastudy.learnquerydsl.metrics;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Limits the JDBC statements and lazy initializations of one unit of work on the current thread,
+ * typically an HTTP request (see {@link QueryBudgetInterceptor}).
+ * <p>
+ * The first time a limit is passed the call site that caused it is logged; with {@code failOnExceed}
+ * the statement or lazy load that passes the limit throws {@link QueryBudgetExceededException} instead
+ * of running, which is how N+1 regressions are made to fail tests.
+ * <pre>
+ * try (QueryBudget budget = QueryBudget.open("report", 10, 0, true)) {
+ *     ...
+ * }
+ * </pre>
+ */
+@Slf4j
+@Getter
+public final class QueryBudget implements AutoCloseable {
+
+    private static final ThreadLocal<QueryBudget> CURRENT = new ThreadLocal<>();
+    private static final Set<String> REPORTING_CLASSES = Set.of(
+            QueryBudget.class.getName(), LazyLoadListener.class.getName(), StatementCounter.class.getName());
+
+    private final String name;
+    private final int maxStatements;
+    private final int maxLazyLoads;
+    private final boolean failOnExceed;
+    private final QueryBudget parent;
+
+    private int statements;
+    private int lazyLoads;
+    private boolean exceeded;
+
+    private QueryBudget(String name, int maxStatements, int maxLazyLoads, boolean failOnExceed, QueryBudget parent) {
+        this.name = name;
+        this.maxStatements = maxStatements;
+        this.maxLazyLoads = maxLazyLoads;
+        this.failOnExceed = failOnExceed;
+        this.parent = parent;
+    }
+
+    /**
+     * Opens a budget on the current thread; a budget opened inside another one replaces it until closed.
+     */
+    public static QueryBudget open(String name, int maxStatements, int maxLazyLoads, boolean failOnExceed) {
+        QueryBudget budget = new QueryBudget(name, maxStatements, maxLazyLoads, failOnExceed, CURRENT.get());
+        CURRENT.set(budget);
+        return budget;
+    }
+
+    public static Optional<QueryBudget> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    static void onStatement() {
+        QueryBudget budget = CURRENT.get();
+        if (budget != null && ++budget.statements > budget.maxStatements) {
+            budget.exceed("statements", budget.statements, budget.maxStatements, "JDBC statement");
+        }
+    }
+
+    static void onLazyLoad(String what) {
+        QueryBudget budget = CURRENT.get();
+        if (budget != null && ++budget.lazyLoads > budget.maxLazyLoads) {
+            budget.exceed("lazy loads", budget.lazyLoads, budget.maxLazyLoads, what);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (parent == null) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(parent);
+        }
+    }
+
+    private void exceed(String kind, int count, int max, String what) {
+        String message = String.format("query budget '%s' exceeded: %d %s > %d, %s at %s",
+                name, count, kind, max, what, callSite());
+        if (failOnExceed) {
+            throw new QueryBudgetExceededException(message);
+        }
+        if (!exceeded) {
+            log.warn(message);
+        }
+        exceeded = true;
+    }
+
+    private static String callSite() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith("org.javastudy.")
+                        && !REPORTING_CLASSES.contains(frame.getClassName())
+                        && !frame.getClassName().contains("$$")
+                        && !frame.getClassName().contains("$HibernateProxy$"))
+                .findFirst()
+                .map(StackWalker.StackFrame::toStackTraceElement)
+                .map(StackTraceElement::toString)
+                .orElse("unknown"));
+    }
+}
@@ -0,0 +1,8 @@
+package org.javastudy.learnquerydsl.metrics;
+
+public class QueryBudgetExceededException extends RuntimeException {
+
+    public QueryBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,63 @@
+package org.javastudy.learnquerydsl.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Opens a {@link QueryBudget} around every request handled by Spring MVC.
+ */
+@Slf4j
+@Component
+public class QueryBudgetInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String BUDGET_ATTRIBUTE = QueryBudget.class.getName();
+
+    private final int maxStatements;
+    private final int maxLazyLoads;
+    private final boolean failOnExceed;
+
+    public QueryBudgetInterceptor(@Value("${query.budget.max-statements:20}") int maxStatements,
+                                  @Value("${query.budget.max-lazy-loads:5}") int maxLazyLoads,
+                                  @Value("${query.budget.fail-on-exceed:false}") boolean failOnExceed) {
+        this.maxStatements = maxStatements;
+        this.maxLazyLoads = maxLazyLoads;
+        this.failOnExceed = failOnExceed;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String name = request.getMethod() + " " + request.getRequestURI();
+        request.setAttribute(BUDGET_ATTRIBUTE, QueryBudget.open(name, maxStatements, maxLazyLoads, failOnExceed));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        close(request);
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // the rest of an async request runs on other threads, which have no budget
+        close(request);
+    }
+
+    private void close(HttpServletRequest request) {
+        QueryBudget budget = (QueryBudget) request.getAttribute(BUDGET_ATTRIBUTE);
+        if (budget == null) {
+            return;
+        }
+        request.removeAttribute(BUDGET_ATTRIBUTE);
+        budget.close();
+
+        if (budget.isExceeded()) {
+            log.warn("{}: {} statements (max {}), {} lazy loads (max {})", budget.getName(),
+                    budget.getStatements(), budget.getMaxStatements(), budget.getLazyLoads(), budget.getMaxLazyLoads());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.javastudy.learnquerydsl.metrics;
+
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, row and statement counts per logical query shape, e.g. {@code MemberJpaRepository.search[teamName,ageGoe]}.
+ */
+@Component
+public class QueryMetricsRegistry {
+
+    private final Map<String, ShapeMetrics> shapes = new ConcurrentHashMap<>();
+
+    public void record(String shape, long elapsedNanos, long rows, long statements, boolean failed) {
+        ShapeMetrics metrics = shapes.computeIfAbsent(shape, key -> new ShapeMetrics());
+        metrics.latencyMicros.record(elapsedNanos / 1000);
+        metrics.calls.increment();
+        metrics.rows.add(rows);
+        metrics.statements.add(statements);
+        if (failed) {
+            metrics.errors.increment();
+        }
+    }
+
+    public List<QueryShapeStats> snapshot() {
+        List<QueryShapeStats> result = new ArrayList<>(shapes.size());
+        shapes.forEach((shape, metrics) -> result.add(metrics.toStats(shape)));
+        result.sort(Comparator.comparing(QueryShapeStats::getShape));
+        return result;
+    }
+
+    public void reset() {
+        shapes.clear();
+    }
+
+    private static final class ShapeMetrics {
+
+        private final LatencyHistogram latencyMicros = new LatencyHistogram();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder statements = new LongAdder();
+
+        private QueryShapeStats toStats(String shape) {
+            return new QueryShapeStats(shape, calls.sum(), errors.sum(),
+                    latencyMicros.valueAt(0.50), latencyMicros.valueAt(0.95), latencyMicros.valueAt(0.99),
+                    latencyMicros.getMax(), rows.sum(), statements.sum());
+        }
+    }
+
+    @Getter
+    public static class QueryShapeStats {
+
+        private final String shape;
+        private final long calls;
+        private final long errors;
+        private final long p50Micros;
+        private final long p95Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+        private final long rows;
+        private final long statements;
+
+        public QueryShapeStats(String shape, long calls, long errors, long p50Micros, long p95Micros,
+                               long p99Micros, long maxMicros, long rows, long statements) {
+            this.shape = shape;
+            this.calls = calls;
+            this.errors = errors;
+            this.p50Micros = p50Micros;
+            this.p95Micros = p95Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+            this.rows = rows;
+            this.statements = statements;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.javastudy.learnquerydsl.metrics;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.javastudy.learnquerydsl.dto.MemberCursorPage;
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.repository.MemberSearchQueryCache;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times every repository method of MemberJpaRepository and the Spring Data repositories and records it
+ * in {@link QueryMetricsRegistry}. Only registered with {@code query.metrics.enabled=true},
+ * otherwise the repositories are not even proxied for it.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "query.metrics.enabled", havingValue = "true")
+public class RepositoryMetricsAspect {
+
+    private final QueryMetricsRegistry registry;
+    private final Map<Method, String> methodNames = new ConcurrentHashMap<>();
+
+    public RepositoryMetricsAspect(QueryMetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    // repository methods only, not the toString, equals and hashCode they inherit from Object
+    @Around("(execution(public * org.javastudy.learnquerydsl.repository.MemberJpaRepository.*(..))"
+            + " || execution(* org.springframework.data.repository.Repository+.*(..)))"
+            + " && !execution(* java.lang.Object.*(..))")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+
+        String shape = shapeOf(joinPoint);
+        long statementsBefore = StatementCounter.current();
+        long start = System.nanoTime();
+        Object result = null;
+        boolean failed = true;
+        try {
+            result = joinPoint.proceed();
+            failed = false;
+            return result;
+        }
+        finally {
+            registry.record(shape, System.nanoTime() - start, rowsOf(result),
+                    StatementCounter.current() - statementsBefore, failed);
+        }
+    }
+
+    private String shapeOf(ProceedingJoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        String name = methodNames.computeIfAbsent(method, key -> typeNameOf(joinPoint.getThis()) + "." + key.getName());
+
+        for (Object arg : joinPoint.getArgs()) {
+            if (arg instanceof MemberSearchCondition) {
+                return name + MemberSearchQueryCache.describe((MemberSearchCondition) arg);
+            }
+        }
+        return name;
+    }
+
+    private static String typeNameOf(Object proxy) {
+        // Spring Data repositories are JDK proxies, name them after the repository interface
+        Class<?>[] interfaces = AopProxyUtils.proxiedUserInterfaces(proxy);
+        for (Class<?> type : interfaces) {
+            if (type.getName().startsWith("org.javastudy.")) {
+                return type.getSimpleName();
+            }
+        }
+        return AopProxyUtils.ultimateTargetClass(proxy).getSimpleName();
+    }
+
+    private static long rowsOf(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof MemberCursorPage) {
+            return ((MemberCursorPage) result).getContent().size();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,35 @@
+package org.javastudy.learnquerydsl.metrics;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+
+/**
+ * Counts the JDBC statements executed by the current thread and charges them to the current {@link QueryBudget}.
+ * Registered with p6spy, which picks up every JdbcEventListener bean;
+ * when the p6spy datasource decorator is disabled nothing is counted.
+ */
+@Component
+public class StatementCounter extends SimpleJdbcEventListener {
+
+    private static final ThreadLocal<long[]> EXECUTED = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * Number of statements executed by the current thread so far; only differences are meaningful.
+     */
+    public static long current() {
+        return EXECUTED.get()[0];
+    }
+
+    @Override
+    public void onBeforeAnyExecute(StatementInformation statementInformation) {
+        QueryBudget.onStatement();
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        EXECUTED.get()[0]++;
+    }
+}
@@ -0,0 +1,52 @@
+package org.javastudy.learnquerydsl.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Splits ids into IN lists of a few fixed sizes.
+ * <p>
+ * Hibernate expands a collection parameter into one placeholder per element, so every distinct list
+ * length is a distinct SQL string with its own statement and plan cache entry. Padding each batch up
+ * to the next size in {@link #SIZES}, by repeating its last id, keeps that down to five statements.
+ */
+final class InListPadding {
+
+    static final int[] SIZES = { 1, 8, 32, 128, 512 };
+    static final int MAX_SIZE = SIZES[SIZES.length - 1];
+
+    private InListPadding() {
+    }
+
+    /**
+     * @return the distinct, non null ids in batches of at most {@link #MAX_SIZE}, each padded to one of {@link #SIZES}
+     */
+    static <T> List<List<T>> batches(Collection<T> ids) {
+
+        List<T> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        distinct.removeIf(id -> id == null);
+
+        List<List<T>> batches = new ArrayList<>((distinct.size() + MAX_SIZE - 1) / MAX_SIZE);
+        for (int from = 0; from < distinct.size(); from += MAX_SIZE) {
+            List<T> batch = new ArrayList<>(distinct.subList(from, Math.min(from + MAX_SIZE, distinct.size())));
+            T last = batch.get(batch.size() - 1);
+            int size = paddedSize(batch.size());
+            while (batch.size() < size) {
+                batch.add(last);
+            }
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    static int paddedSize(int size) {
+        for (int padded : SIZES) {
+            if (size <= padded) {
+                return padded;
+            }
+        }
+        return MAX_SIZE;
+    }
+}
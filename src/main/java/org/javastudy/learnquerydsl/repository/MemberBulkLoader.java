@@ -0,0 +1,121 @@
+package org.javastudy.learnquerydsl.repository;
+
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Seeds or ingests large numbers of members.
+ * <p>
+ * Rows are written in chunks of {@code batchSize}: every chunk is sent as JDBC batch inserts,
+ * ids come from pooled sequences (see {@link Member} and {@link Team}), and the persistence
+ * context is flushed and cleared after each chunk so it never holds more than one chunk.
+ * Without a surrounding transaction every chunk commits on its own; inside one, the caller's
+ * persistence context is cleared along the way.
+ */
+@Slf4j
+@Component
+public class MemberBulkLoader {
+
+    private final EntityManager em;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public MemberBulkLoader(EntityManager em, TransactionTemplate transactionTemplate,
+                            @Value("${member.bulk-load.batch-size:1000}") int batchSize) {
+        this.em = em;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Creates {@code teamCount} teams named team0.. and {@code memberCount} members named member0..,
+     * spread round-robin over the teams, with ages 0..99.
+     */
+    public BulkLoadResult load(int memberCount, int teamCount) {
+        return load(memberCount, IntStream.range(0, teamCount)
+                .mapToObj(i -> "team" + i)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Same as {@link #load(int, int)}, with one team per name.
+     */
+    public BulkLoadResult load(int memberCount, List<String> teamNames) {
+
+        long start = System.nanoTime();
+        List<Long> teamIds = transactionTemplate.execute(status -> persistTeams(teamNames));
+
+        for (int from = 0; from < memberCount; from += batchSize) {
+            int to = Math.min(from + batchSize, memberCount);
+            int chunkStart = from;
+            transactionTemplate.executeWithoutResult(status -> persistMembers(chunkStart, to, teamIds));
+        }
+
+        BulkLoadResult result = new BulkLoadResult(memberCount, teamNames.size(), System.nanoTime() - start);
+        log.info("bulk loaded {}", result);
+        return result;
+    }
+
+    private List<Long> persistTeams(List<String> teamNames) {
+        useJdbcBatching();
+
+        List<Long> teamIds = new ArrayList<>(teamNames.size());
+        for (String teamName : teamNames) {
+            Team team = new Team(teamName);
+            em.persist(team);
+            teamIds.add(team.getId());
+        }
+        em.flush();
+        em.clear();
+        return teamIds;
+    }
+
+    private void persistMembers(int from, int to, List<Long> teamIds) {
+        useJdbcBatching();
+
+        for (int i = from; i < to; i++) {
+            Member member = new Member("member" + i, i % 100);
+            if (!teamIds.isEmpty()) {
+                // a reference is enough to write team_id, and unlike changeTeam it does not load the team
+                member.setTeam(em.getReference(Team.class, teamIds.get(i % teamIds.size())));
+            }
+            em.persist(member);
+        }
+        em.flush();
+        em.clear();
+    }
+
+    private void useJdbcBatching() {
+        em.unwrap(Session.class).setJdbcBatchSize(batchSize);
+    }
+
+    @Getter
+    @ToString
+    public static class BulkLoadResult {
+
+        private final int members;
+        private final int teams;
+        private final long elapsedMillis;
+        private final double rowsPerSecond;
+
+        public BulkLoadResult(int members, int teams, long elapsedNanos) {
+            this.members = members;
+            this.teams = teams;
+            this.elapsedMillis = elapsedNanos / 1_000_000;
+            this.rowsPerSecond = (members + teams) / Math.max(elapsedNanos / 1e9, 1e-9);
+        }
+    }
+}
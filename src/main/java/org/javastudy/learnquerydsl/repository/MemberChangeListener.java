@@ -0,0 +1,144 @@
+package org.javastudy.learnquerydsl.repository;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.javastudy.learnquerydsl.PrimaryReads;
+import org.javastudy.learnquerydsl.entity.MemberDataChangedEvent;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.event.EventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.function.Supplier;
+
+/**
+ * Base of the in-memory projections of member data that follow committed entity writes through Hibernate's
+ * post-commit listeners. Writes that roll back never reach them.
+ * <p>
+ * Bulk JPQL statements bypass those listeners and announce themselves with
+ * {@link MemberDataChangedEvent#bulk(Class)} instead; {@link #onBulkChange()} runs once the statement's
+ * transaction commits, or right away outside a transaction.
+ * <p>
+ * A projection only hears the writes committed after it loaded, so it loads through {@link #loadCommitted},
+ * which reads from the primary when read-only transactions go to a replica that may lag.
+ */
+public abstract class MemberChangeListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener {
+
+    private final EntityManagerFactory emf;
+    private final ObjectProvider<PrimaryReads> primaryReads;
+
+    protected MemberChangeListener(EntityManagerFactory emf, ObjectProvider<PrimaryReads> primaryReads) {
+        this.emf = emf;
+        this.primaryReads = primaryReads;
+    }
+
+    /**
+     * Whether the projection is switched on; one that is not is never registered and hears nothing.
+     */
+    protected abstract boolean isListening();
+
+    /**
+     * Whether writes of the given entity type concern the projection.
+     */
+    protected abstract boolean follows(Class<?> entityType);
+
+    /**
+     * A committed bulk statement changed members in ways the projection cannot know.
+     */
+    protected abstract void onBulkChange();
+
+    @PostConstruct
+    public void register() {
+        if (!isListening()) {
+            return;
+        }
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @EventListener
+    public void onMemberDataChanged(MemberDataChangedEvent event) {
+
+        // entity writes come through the post-commit listeners
+        if (!isListening() || event.getType() != MemberDataChangedEvent.Type.BULK) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    onBulkChange();
+                }
+            });
+        }
+        else {
+            onBulkChange();
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return isListening() && follows(persister.getMappedClass());
+    }
+
+    /**
+     * Still abstract in Hibernate 5.4, which only calls it through {@link #requiresPostCommitHandling}.
+     */
+    @Override
+    @Deprecated
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    /**
+     * Runs the queries of a load so that they see every committed write.
+     */
+    protected <T> T loadCommitted(Supplier<T> load) {
+        PrimaryReads reads = primaryReads.getIfAvailable();
+        return (reads == null) ? load.get() : reads.call(load);
+    }
+
+    protected static Object property(EntityPersister persister, Object[] state, String name) {
+        return state[persister.getEntityMetamodel().getPropertyIndex(name)];
+    }
+
+    protected static Long teamId(EntityPersister persister, Object[] state) {
+        Team team = (Team) property(persister, state, "team");
+        // getId() does not initialize a team proxy
+        return (team == null) ? null : team.getId();
+    }
+
+    protected static int age(EntityPersister persister, Object[] state) {
+        Integer age = (Integer) property(persister, state, "age");
+        return (age == null) ? 0 : age;
+    }
+}
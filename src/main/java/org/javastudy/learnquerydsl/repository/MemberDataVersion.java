@@ -0,0 +1,67 @@
+package org.javastudy.learnquerydsl.repository;
+
+import org.javastudy.learnquerydsl.entity.MemberDataChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version of the member and team data, which changes whenever any of it may have changed: entity
+ * writes such as {@code save} and {@code changeTeam} when they are flushed, and bulk updates and deletes
+ * through {@link MemberDataChangedEvent#bulk(Class)}.
+ * <p>
+ * The version is bumped once when the write is flushed and once more after its transaction completes, so
+ * a read that saw the rows from before the commit is never labelled with a version that outlives them.
+ * ETags and {@link MemberSearchResultCache} entries are both tied to it. Versions are only comparable within one run of the application,
+ * which {@link #getEpoch()} identifies.
+ */
+@Component
+public class MemberDataVersion {
+
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final AtomicLong version = new AtomicLong();
+    private volatile long changedAtMillis;
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public long current() {
+        return version.get();
+    }
+
+    /**
+     * When the version last changed, 0 if it never did.
+     */
+    public long getChangedAtMillis() {
+        return changedAtMillis;
+    }
+
+    @EventListener
+    public void onMemberDataChanged(MemberDataChangedEvent event) {
+
+        changed();
+
+        // bulk loads flush thousands of rows per transaction, one synchronization is enough
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+                && !TransactionSynchronizationManager.hasResource(this)) {
+            TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(MemberDataVersion.this);
+                    changed();
+                }
+            });
+        }
+    }
+
+    private void changed() {
+        version.incrementAndGet();
+        changedAtMillis = System.currentTimeMillis();
+    }
+}
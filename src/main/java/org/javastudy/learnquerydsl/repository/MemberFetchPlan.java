@@ -0,0 +1,30 @@
+package org.javastudy.learnquerydsl.repository;
+
+/**
+ * What to load together with a member.
+ * <p>
+ * {@link #MEMBER_WITH_TEAM} loads the team in the same query with a left join, so touching
+ * Member.team later costs nothing; {@link #MEMBER_ONLY} leaves it as a lazy proxy and joins nothing.
+ */
+public enum MemberFetchPlan {
+
+    MEMBER_ONLY(null),
+    MEMBER_WITH_TEAM(MemberFetchPlan.WITH_TEAM_GRAPH);
+
+    /** name of the entity graph declared on Member */
+    public static final String WITH_TEAM_GRAPH = "Member.team";
+
+    private final String entityGraph;
+
+    MemberFetchPlan(String entityGraph) {
+        this.entityGraph = entityGraph;
+    }
+
+    public String getEntityGraph() {
+        return entityGraph;
+    }
+
+    public boolean fetchesTeam() {
+        return entityGraph != null;
+    }
+}
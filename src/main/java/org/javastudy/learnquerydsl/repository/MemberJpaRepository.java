@@ -1,31 +1,102 @@
 package org.javastudy.learnquerydsl.repository;
 
+import com.mysema.commons.lang.CloseableIterator;
 import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.OrderSpecifier;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.persister.entity.EntityPersister;
+import org.javastudy.learnquerydsl.dto.MemberCountEstimate;
+import org.javastudy.learnquerydsl.dto.MemberCursorPage;
 import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberSearchCursor;
+import org.javastudy.learnquerydsl.dto.MemberSortKey;
 import org.javastudy.learnquerydsl.dto.MemberTeamDto;
 import org.javastudy.learnquerydsl.dto.QMemberTeamDto;
 import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.MemberDataChangedEvent;
 import org.javastudy.learnquerydsl.entity.QMember;
 import org.javastudy.learnquerydsl.entity.QTeam;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import static org.springframework.util.StringUtils.hasText;
 
+/**
+ * Reads run in read-only transactions, which Hibernate flushes manually, and entity queries
+ * load their members read-only even inside a caller's read-write transaction: no snapshot is
+ * kept for them and flush does not dirty-check them. To change a member, load it with
+ * {@link #findById(Long)}, {@link #findById(Long, MemberFetchPlan)} or through the EntityManager.
+ */
+@Slf4j
 @Repository
+@Transactional(readOnly = true)
 public class MemberJpaRepository {
 
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberSearchQueryCache searchQueryCache;
+    private final MemberSearchResultCache searchResultCache;
+    private final MemberSearchSnapshot searchSnapshot;
+    private final MemberSearchStatistics searchStatistics;
+    private final MemberUsernameIndex usernameIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int bulkChunkSize;
+    private final long exactCountBelow;
 
-    public MemberJpaRepository(EntityManager em, JPAQueryFactory queryFactory) {
+    public MemberJpaRepository(EntityManager em, JPAQueryFactory queryFactory,
+                               MemberSearchQueryCache searchQueryCache, MemberSearchResultCache searchResultCache,
+                               MemberSearchSnapshot searchSnapshot,
+                               MemberSearchStatistics searchStatistics, MemberUsernameIndex usernameIndex,
+                               TransactionTemplate transactionTemplate, ApplicationEventPublisher eventPublisher,
+                               @Value("${member.bulk-update.chunk-size:1000}") int bulkChunkSize,
+                               @Value("${member.search.approximate-count.exact-below:10000}") long exactCountBelow) {
         this.em = em;
         this.queryFactory = queryFactory;
+        this.searchQueryCache = searchQueryCache;
+        this.searchResultCache = searchResultCache;
+        this.searchSnapshot = searchSnapshot;
+        this.searchStatistics = searchStatistics;
+        this.usernameIndex = usernameIndex;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.bulkChunkSize = bulkChunkSize;
+        this.exactCountBelow = exactCountBelow;
     }
 
+    @Transactional
     public void save(Member member) {
         em.persist(member);
     }
@@ -38,7 +109,9 @@ public class MemberJpaRepository {
 
     public List<Member> findAll() {
 
-        return em.createQuery("select m from Member m", Member.class).getResultList();
+        return em.createQuery("select m from Member m", Member.class)
+                .setHint(QueryHints.READ_ONLY, true)
+                .getResultList();
     }
 
     public List<Member> findAll_Querydsl() {
@@ -46,21 +119,117 @@ public class MemberJpaRepository {
         QMember member = QMember.member;
         return queryFactory
                 .selectFrom(member)
+                .setHint(QueryHints.READ_ONLY, true)
                 .fetch();
     }
 
     public List<Member> findByUsername(String username) {
         return em.createQuery("select m from Member m where m.username = :username", Member.class)
                 .setParameter("username", username)
+                .setHint(QueryHints.READ_ONLY, true)
                 .getResultList();
     }
 
+    /**
+     * Loads many members with a few IN queries instead of one {@link #findById(Long)} per id.
+     * <p>
+     * Members already in the persistence context are taken from there; the rest are queried in
+     * batches padded by {@link InListPadding}. The result follows the order of {@code ids}, without
+     * duplicates and without the ids that do not exist.
+     * <p>
+     * Like {@link #findById(Long)}, the members loaded here can be modified. Members taken from the
+     * persistence context are returned as they are, so one that an earlier query loaded read-only, such as
+     * {@link #findAll()}, stays read-only.
+     */
+    public List<Member> findAllByIds(Collection<Long> ids) {
+
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        PersistenceContext persistenceContext = session.getPersistenceContext();
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(Member.class);
+
+        Map<Long, Member> found = new HashMap<>();
+        List<Long> missing = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            if (id == null || found.containsKey(id)) {
+                continue;
+            }
+            Object loaded = persistenceContext.getEntity(session.generateEntityKey(id, persister));
+            if (loaded != null && isAlive(persistenceContext.getEntry(loaded))) {
+                found.put(id, (Member) loaded);
+            }
+            else {
+                missing.add(id);
+            }
+        }
+
+        QMember member = QMember.member;
+        for (List<Long> batch : InListPadding.batches(missing)) {
+            queryFactory
+                    .selectFrom(member)
+                    .where(member.id.in(batch))
+                    .fetch()
+                    .forEach(row -> found.put(row.getId(), row));
+        }
+
+        List<Member> result = new ArrayList<>(found.size());
+        for (Long id : new LinkedHashSet<>(ids)) {
+            Member row = found.get(id);
+            if (row != null) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isAlive(EntityEntry entry) {
+        return entry != null && entry.getStatus() != Status.DELETED && entry.getStatus() != Status.GONE;
+    }
+
+    /**
+     * Like {@link #findById(Long)}, the member can be modified.
+     */
+    public Optional<Member> findById(Long id, MemberFetchPlan plan) {
+
+        QMember member = QMember.member;
+        return Optional.ofNullable(selectMember(plan)
+                .where(member.id.eq(id))
+                .fetchOne());
+    }
+
+    public List<Member> findAll(MemberFetchPlan plan) {
+        return selectMember(plan)
+                .setHint(QueryHints.READ_ONLY, true)
+                .fetch();
+    }
+
+    public List<Member> findByUsername(String username, MemberFetchPlan plan) {
+
+        QMember member = QMember.member;
+        return selectMember(plan)
+                .where(member.username.eq(username))
+                .setHint(QueryHints.READ_ONLY, true)
+                .fetch();
+    }
+
+    private JPAQuery<Member> selectMember(MemberFetchPlan plan) {
+
+        QMember member = QMember.member;
+        QTeam team = QTeam.team;
+
+        JPAQuery<Member> query = queryFactory.selectFrom(member);
+        if (plan.fetchesTeam()) {
+            query.leftJoin(member.team, team).fetchJoin();
+        }
+        return query;
+    }
+
     public List<Member> findByUsername_Querydsl(String username) {
 
         QMember member = QMember.member;
         return queryFactory
                 .selectFrom(member)
                 .where(member.username.eq(username))
+                .setHint(QueryHints.READ_ONLY, true)
                 .fetch();
     }
 
@@ -72,6 +241,12 @@ public class MemberJpaRepository {
         if (hasText(condition.getUsername())) {
             builder.and(member.username.eq(condition.getUsername()));
         }
+        if (hasText(condition.getUsernameStartsWith())) {
+            builder.and(usernameStartsWith(condition.getUsernameStartsWith()));
+        }
+        if (hasText(condition.getUsernameContains())) {
+            builder.and(usernameContains(condition.getUsernameContains()));
+        }
         if (hasText(condition.getTeamName())) {
             builder.and(team.name.eq(condition.getTeamName()));
         }
@@ -97,12 +272,188 @@ public class MemberJpaRepository {
 
     }
 
+    /**
+     * Same query as {@link #searchByBuilder(MemberSearchCondition)}, but the JPQL of each
+     * condition shape is compiled once by {@link MemberSearchQueryCache} and only bound afterwards.
+     * When {@link MemberSearchResultCache} is enabled the result may be served from it,
+     * in which case the returned list is shared and unmodifiable.
+     * With {@code member.search.engine=snapshot} it is answered by {@link MemberSearchSnapshot} instead,
+     * unless the caller is inside a read-write transaction.
+     */
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        if (searchSnapshot.canServe()) {
+            return searchSnapshot.search(condition);
+        }
+        return searchResultCache.get(condition, () -> searchQueryCache.search(condition));
+    }
+
+    /**
+     * Offset paginated search. The total is computed by a separate count query which
+     * only joins team when it filters on it, and which is skipped entirely when the
+     * total can be derived from the content (first page smaller than the page size, or last page).
+     * Rows are ordered by member.id; the sort of the pageable is not applied.
+     */
+    public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        return PageableExecutionUtils.getPage(pageContentQuery(condition, pageable).fetch(), pageable,
+                () -> searchCount(condition));
+    }
+
+    JPAQuery<MemberTeamDto> pageContentQuery(MemberSearchCondition condition, Pageable pageable) {
+
+        QMember member = QMember.member;
+        JPAQuery<MemberTeamDto> contentQuery = searchQuery(condition)
+                .orderBy(member.id.asc());
+
+        if (pageable.isPaged()) {
+            contentQuery
+                    .offset(pageable.getOffset())
+                    .limit(pageable.getPageSize());
+        }
+        return contentQuery;
+    }
+
+    public long searchCount(MemberSearchCondition condition) {
+        Long count = countQuery(condition).fetchOne();
+        return (count == null) ? 0 : count;
+    }
+
+    JPAQuery<Long> countQuery(MemberSearchCondition condition) {
 
         QMember member = QMember.member;
         QTeam team = QTeam.team;
 
-        return queryFactory
+        JPAQuery<Long> countQuery = queryFactory
+                .select(member.count())
+                .from(member)
+                .where(searchFilters(condition));
+
+        // every member row is counted once whether or not it has a team,
+        // so the join is only needed when team.name is filtered on
+        if (hasText(condition.getTeamName())) {
+            countQuery.join(member.team, team);
+        }
+        return countQuery;
+    }
+
+    /**
+     * Count for "about N results", estimated from {@link MemberSearchStatistics} without touching the member table.
+     * Counts exactly with {@link #searchCount(MemberSearchCondition)} instead when
+     * <ul>
+     *     <li>the estimate may be below {@code member.search.approximate-count.exact-below}, where an exact count
+     *     is cheap and an estimate is visibly off,</li>
+     *     <li>{@code team.stats.enabled} is off, so the statistics would cost a GROUP BY of their own,</li>
+     *     <li>the condition filters on the username, which the statistics do not track; the username indexes,
+     *     or {@link MemberUsernameIndex} for {@code usernameContains}, keep that count cheap.</li>
+     * </ul>
+     */
+    public MemberCountEstimate searchCountEstimate(MemberSearchCondition condition) {
+
+        if (!condition.hasUsernameFilter() && searchStatistics.isAvailable()) {
+            MemberCountEstimate estimate = searchStatistics.estimate(condition);
+            if (estimate.getUpperBound() >= exactCountBelow) {
+                return estimate;
+            }
+        }
+        return MemberCountEstimate.exact(searchCount(condition));
+    }
+
+    /**
+     * Keyset (seek) pagination: instead of skipping {@code offset} rows the next page starts
+     * right after the row the cursor points at, so every page costs the same as the first one.
+     *
+     * @param after   position of the last row of the previous page, or null for the first page
+     * @param sortKey sort order of the first page; later pages use the sort key of the cursor
+     * @param size    requested page size, clamped to [1, MAX_PAGE_SIZE]
+     */
+    public MemberCursorPage searchByCursor(MemberSearchCondition condition, MemberSearchCursor after,
+                                           MemberSortKey sortKey, int size) {
+
+        MemberSortKey key = (after != null) ? after.getSortKey() : sortKey;
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        List<MemberTeamDto> rows = cursorQuery(condition, after, key, limit + 1).fetch();
+
+        if (rows.size() <= limit) {
+            return new MemberCursorPage(rows, null);
+        }
+
+        List<MemberTeamDto> content = rows.subList(0, limit);
+        String nextCursor = MemberSearchCursor.after(key, content.get(limit - 1)).encode();
+        return new MemberCursorPage(content, nextCursor);
+    }
+
+    JPAQuery<MemberTeamDto> cursorQuery(MemberSearchCondition condition, MemberSearchCursor after,
+                                        MemberSortKey sortKey, int limit) {
+        return searchQuery(condition)
+                .where(seekAfter(after))
+                .orderBy(keysetOrder(sortKey))
+                .limit(limit);
+    }
+
+    private BooleanExpression seekAfter(MemberSearchCursor after) {
+
+        if (after == null) {
+            return null;
+        }
+
+        QMember member = QMember.member;
+        if (after.getSortKey() == MemberSortKey.AGE) {
+            return member.age.gt(after.getLastAge())
+                    .or(member.age.eq(after.getLastAge()).and(member.id.gt(after.getLastId())));
+        }
+        return member.id.gt(after.getLastId());
+    }
+
+    private OrderSpecifier<?>[] keysetOrder(MemberSortKey sortKey) {
+
+        QMember member = QMember.member;
+        if (sortKey == MemberSortKey.AGE) {
+            return new OrderSpecifier<?>[] { member.age.asc(), member.id.asc() };
+        }
+        return new OrderSpecifier<?>[] { member.id.asc() };
+    }
+
+    /**
+     * Streams the search result row by row through a forward-only scrollable cursor instead
+     * of materializing it, so memory stays flat however many rows match.
+     * The transaction keeps the connection (and the server side cursor) open while consuming.
+     *
+     * @param fetchSize JDBC fetch size, i.e. number of rows the driver buffers per round trip
+     * @return number of rows handed to the consumer
+     */
+    @Transactional(readOnly = true)
+    public long streamSearch(MemberSearchCondition condition, int fetchSize, Consumer<MemberTeamDto> consumer) {
+
+        long count = 0;
+        try (CloseableIterator<MemberTeamDto> rows = streamQuery(condition, fetchSize).iterate()) {
+            while (rows.hasNext()) {
+                consumer.accept(rows.next());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    JPAQuery<MemberTeamDto> streamQuery(MemberSearchCondition condition, int fetchSize) {
+
+        QMember member = QMember.member;
+        return searchQuery(condition)
+                .orderBy(member.id.asc())
+                .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.READ_ONLY, true);
+    }
+
+    /**
+     * The rows of a search, unordered. A team name filter drops members without a team anyway, so then team is
+     * inner joined, as in {@link MemberSearchQueryCache}, and the database can start from the team name index
+     * instead of reading every member.
+     */
+    private JPAQuery<MemberTeamDto> searchQuery(MemberSearchCondition condition) {
+
+        QMember member = QMember.member;
+        QTeam team = QTeam.team;
+
+        JPAQuery<MemberTeamDto> query = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -110,15 +461,214 @@ public class MemberJpaRepository {
                         team.id.as("teamId"),
                         team.name.as("teamName")
                 ))
+                .from(member);
+        if (hasText(condition.getTeamName())) {
+            query.join(member.team, team);
+        }
+        else {
+            query.leftJoin(member.team, team);
+        }
+        return query.where(searchFilters(condition));
+    }
+
+    private BooleanExpression[] searchFilters(MemberSearchCondition condition) {
+        return new BooleanExpression[] {
+                usernameEq(condition.getUsername()),
+                usernameStartsWith(condition.getUsernameStartsWith()),
+                usernameContains(condition.getUsernameContains()),
+                teamNameEq(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe())
+        };
+    }
+
+    /**
+     * Applies {@code assignments} to every member matching the condition, e.g.
+     * {@code update -> update.set(member.age, member.age.add(1))}.
+     *
+     * @see #bulkUpdate(MemberSearchCondition, Consumer, Consumer)
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public BulkResult bulkUpdate(MemberSearchCondition condition, Consumer<JPAUpdateClause> assignments) {
+        return bulkUpdate(condition, assignments, progress -> { });
+    }
+
+    /**
+     * Bulk update in chunks of {@code member.bulk-update.chunk-size} consecutive ids.
+     * <p>
+     * Every chunk is one UPDATE statement in its own transaction, so row locks are held for one chunk
+     * only; inside a caller's transaction the chunks join it instead. Before a chunk runs, pending
+     * changes are flushed; afterwards, members of the chunk that are managed by the current persistence
+     * context are refreshed, so they do not keep their old state. {@code progress} is called after
+     * every chunk. When at most one chunk's worth of members match, the whole id range is updated by a
+     * single statement instead, see {@link #fitsOneChunk(MemberSearchCondition)}.
+     *
+     * @return number of rows updated
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public BulkResult bulkUpdate(MemberSearchCondition condition, Consumer<JPAUpdateClause> assignments,
+                                 Consumer<BulkProgress> progress) {
+
+        QMember member = QMember.member;
+        return inChunks("update", condition, progress, em::refresh, (fromId, toId) -> {
+            JPAUpdateClause update = queryFactory.update(member);
+            assignments.accept(update);
+            return update.where(bulkWhere(condition, fromId, toId)).execute();
+        });
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public BulkResult bulkDelete(MemberSearchCondition condition) {
+        return bulkDelete(condition, progress -> { });
+    }
+
+    /**
+     * Bulk delete in chunks, like {@link #bulkUpdate(MemberSearchCondition, Consumer, Consumer)};
+     * deleted members are detached from the current persistence context.
+     *
+     * @return number of rows deleted
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public BulkResult bulkDelete(MemberSearchCondition condition, Consumer<BulkProgress> progress) {
+
+        QMember member = QMember.member;
+        return inChunks("delete", condition, progress, em::detach, (fromId, toId) -> queryFactory
+                .delete(member)
+                .where(bulkWhere(condition, fromId, toId))
+                .execute());
+    }
+
+    private BulkResult inChunks(String operation, MemberSearchCondition condition, Consumer<BulkProgress> progress,
+                                Consumer<Member> syncAffected, ChunkStatement statement) {
+
+        long start = System.nanoTime();
+        QMember member = QMember.member;
+
+        // the matching rows are only counted when the statistics cannot tell whether they fit in one chunk
+        Boolean estimatedToFit = fitsOneChunk(condition);
+        Tuple idRange = transactionTemplate.execute(status -> queryFactory
+                .select(estimatedToFit != null
+                        ? new Expression<?>[] { member.id.min(), member.id.max() }
+                        : new Expression<?>[] { member.id.min(), member.id.max(), member.count() })
                 .from(member)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .leftJoin(member.team, team)
+                .where(bulkWhere(condition, null, null))
+                .fetchOne());
+        Long minId = (idRange == null) ? null : idRange.get(member.id.min());
+        Long maxId = (idRange == null) ? null : idRange.get(member.id.max());
+        if (minId == null) {
+            return new BulkResult(0, 0, System.nanoTime() - start);
+        }
+
+        // a few matching rows spread over a wide id range take one statement, not many that each match almost nothing
+        long chunkSize = bulkChunkSize;
+        boolean oneChunk = (estimatedToFit != null) ? estimatedToFit : idRange.get(member.count()) <= bulkChunkSize;
+        if (oneChunk) {
+            chunkSize = maxId - minId + 1;
+        }
+
+        long chunks = (maxId - minId) / chunkSize + 1;
+        long affected = 0;
+        long chunk = 0;
+        for (long fromId = minId; fromId <= maxId; fromId += chunkSize) {
+            long chunkFrom = fromId;
+            long chunkTo = fromId + chunkSize;
+
+            Long rows = transactionTemplate.execute(status -> {
+                em.flush();
+                List<Member> affectedManaged = managedMatching(condition, chunkFrom, chunkTo);
+                long count = statement.execute(chunkFrom, chunkTo);
+                affectedManaged.forEach(syncAffected);
+                eventPublisher.publishEvent(MemberDataChangedEvent.bulk(Member.class));
+                return count;
+            });
+
+            affected += rows;
+            chunk++;
+            BulkProgress current = new BulkProgress(chunk, chunks, affected, Math.min(chunkTo - 1, maxId), maxId);
+            log.debug("bulk {} {}", operation, current);
+            progress.accept(current);
+        }
+
+        BulkResult result = new BulkResult(affected, chunk, System.nanoTime() - start);
+        log.info("bulk {} {}", operation, result);
+        return result;
+    }
+
+    /**
+     * Whether at most one chunk's worth of members match, going by {@link MemberSearchStatistics}; null when the
+     * statistics cannot tell: they are off, the condition filters on the username, or the bounds of the estimate
+     * lie on both sides of the chunk size. Either answer updates exactly the matching rows, a stale estimate
+     * only costs statements.
+     */
+    Boolean fitsOneChunk(MemberSearchCondition condition) {
+
+        if (condition.hasUsernameFilter() || !searchStatistics.isAvailable()) {
+            return null;
+        }
+        MemberCountEstimate estimate = searchStatistics.estimate(condition);
+        if (estimate.getUpperBound() <= bulkChunkSize) {
+            return true;
+        }
+        if (estimate.getLowerBound() > bulkChunkSize) {
+            return false;
+        }
+        return null;
+    }
+
+    /**
+     * Bulk statements bypass the persistence context. Finds the members of the id range that are
+     * managed by it and match the condition, before the statement changes what matches.
+     */
+    private List<Member> managedMatching(MemberSearchCondition condition, long fromId, long toId) {
+
+        Map<Long, Member> managed = new HashMap<>();
+        for (Map.Entry<Object, EntityEntry> entry : em.unwrap(SessionImplementor.class)
+                .getPersistenceContext().reentrantSafeEntityEntries()) {
+            if (entry.getKey() instanceof Member) {
+                Long id = (Long) entry.getValue().getId();
+                if (id >= fromId && id < toId) {
+                    managed.put(id, (Member) entry.getKey());
+                }
+            }
+        }
+        if (managed.isEmpty()) {
+            return List.of();
+        }
+
+        QMember member = QMember.member;
+        List<Long> matching = queryFactory
+                .select(member.id)
+                .from(member)
+                .where(bulkWhere(condition, fromId, toId))
+                .where(member.id.in(managed.keySet()))
                 .fetch();
+
+        List<Member> affected = new ArrayList<>(matching.size());
+        for (Long id : matching) {
+            affected.add(managed.get(id));
+        }
+        return affected;
+    }
+
+    private BooleanExpression[] bulkWhere(MemberSearchCondition condition, Long fromId, Long toId) {
+
+        QMember member = QMember.member;
+        return new BooleanExpression[] {
+                (fromId != null) ? member.id.goe(fromId) : null,
+                (toId != null) ? member.id.lt(toId) : null,
+                usernameEq(condition.getUsername()),
+                usernameStartsWith(condition.getUsernameStartsWith()),
+                usernameContains(condition.getUsernameContains()),
+                teamNameIn(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe())
+        };
+    }
+
+    @FunctionalInterface
+    private interface ChunkStatement {
+
+        long execute(long fromId, long toId);
     }
 
     private BooleanExpression ageBetween(Integer ageLoe, Integer ageGoe) {
@@ -146,8 +696,20 @@ public class MemberJpaRepository {
 
     private BooleanExpression teamNameEq(String teamName) {
 
+        // refers to the joined team alias; a member.team.name path would add an implicit second join
+        QTeam team = QTeam.team;
+        return (teamName == null || teamName.length() == 0) ? null : team.name.eq(teamName);
+    }
+
+    private BooleanExpression teamNameIn(String teamName) {
+
+        // bulk statements cannot join, so the team is matched by a subquery on its id
         QMember member = QMember.member;
-        return (teamName == null || teamName.length() == 0) ? null : member.team.name.eq(teamName);
+        QTeam team = QTeam.team;
+        return (teamName == null || teamName.length() == 0) ? null : member.team.id.in(JPAExpressions
+                .select(team.id)
+                .from(team)
+                .where(team.name.eq(teamName)));
     }
 
     private BooleanExpression usernameEq(String username) {
@@ -155,4 +717,74 @@ public class MemberJpaRepository {
         QMember member = QMember.member;
         return ( username == null || username.length() == 0) ? null : member.username.eq(username);
     }
+
+    private BooleanExpression usernameStartsWith(String prefix) {
+
+        // a range of the username index, like the search query shapes
+        QMember member = QMember.member;
+        return (prefix == null || prefix.length() == 0) ? null
+                : member.username.goe(prefix).and(member.username.lt(MemberUsernameIndex.prefixEnd(prefix)));
+    }
+
+    /**
+     * {@code username like '%fragment%'}, restricted to the candidate ids of {@link MemberUsernameIndex}, which
+     * are at most {@code member.search.username-index.max-candidates} here as in {@link MemberSearchQueryCache}.
+     * This single statement takes them as padded IN lists joined with {@code or}.
+     */
+    private BooleanExpression usernameContains(String fragment) {
+
+        if (fragment == null || fragment.length() == 0) {
+            return null;
+        }
+
+        QMember member = QMember.member;
+        BooleanExpression contains = member.username.contains(fragment);
+        List<Long> candidates = usernameIndex.candidates(fragment);
+        if (candidates == null) {
+            return contains;
+        }
+        if (candidates.isEmpty()) {
+            // ids are never null, nothing matches
+            return member.id.isNull();
+        }
+        BooleanExpression ids = null;
+        for (List<Long> batch : InListPadding.batches(candidates)) {
+            ids = (ids == null) ? member.id.in(batch) : ids.or(member.id.in(batch));
+        }
+        return ids.and(contains);
+    }
+
+    @Getter
+    @ToString
+    public static class BulkProgress {
+
+        private final long chunk;
+        private final long chunks;
+        private final long affectedRows;
+        private final long lastId;
+        private final long maxId;
+
+        public BulkProgress(long chunk, long chunks, long affectedRows, long lastId, long maxId) {
+            this.chunk = chunk;
+            this.chunks = chunks;
+            this.affectedRows = affectedRows;
+            this.lastId = lastId;
+            this.maxId = maxId;
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class BulkResult {
+
+        private final long affectedRows;
+        private final long chunks;
+        private final long elapsedMillis;
+
+        public BulkResult(long affectedRows, long chunks, long elapsedNanos) {
+            this.affectedRows = affectedRows;
+            this.chunks = chunks;
+            this.elapsedMillis = elapsedNanos / 1_000_000;
+        }
+    }
 }
@@ -1,12 +1,48 @@
 package org.javastudy.learnquerydsl.repository;
 
 import org.javastudy.learnquerydsl.entity.Member;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.QueryHint;
 
 import java.util.List;
 import java.util.Optional;
 
-public interface MemberRepository extends JpaRepository<Member, Long> {
+/**
+ * The query methods declared here run in read-only transactions and load read-only entities,
+ * which Hibernate neither snapshots nor dirty-checks. Single member lookups are the exception:
+ * {@link #findWithTeamById(Long)}, and so {@link #findById(Long, MemberFetchPlan)} with either plan, return a
+ * member that can be modified, like the inherited {@code findById(Long)}.
+ */
+@Transactional(readOnly = true)
+public interface MemberRepository extends JpaRepository<Member, Long>, MemberRepositoryCustom {
 
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true"))
     List<Member> findByUsername(String username);
+
+    @EntityGraph(MemberFetchPlan.WITH_TEAM_GRAPH)
+    Optional<Member> findWithTeamById(Long id);
+
+    @EntityGraph(MemberFetchPlan.WITH_TEAM_GRAPH)
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true"))
+    List<Member> findAllWithTeamBy();
+
+    @EntityGraph(MemberFetchPlan.WITH_TEAM_GRAPH)
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true"))
+    List<Member> findWithTeamByUsername(String username);
+
+    default Optional<Member> findById(Long id, MemberFetchPlan plan) {
+        return plan.fetchesTeam() ? findWithTeamById(id) : findById(id);
+    }
+
+    default List<Member> findAll(MemberFetchPlan plan) {
+        return plan.fetchesTeam() ? findAllWithTeamBy() : findAll();
+    }
+
+    default List<Member> findByUsername(String username, MemberFetchPlan plan) {
+        return plan.fetchesTeam() ? findWithTeamByUsername(username) : findByUsername(username);
+    }
 }
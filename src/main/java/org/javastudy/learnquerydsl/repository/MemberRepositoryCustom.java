@@ -0,0 +1,17 @@
+package org.javastudy.learnquerydsl.repository;
+
+import org.javastudy.learnquerydsl.entity.Member;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface MemberRepositoryCustom {
+
+    /**
+     * Same as {@link MemberJpaRepository#findAllByIds(Collection)}: members already in the persistence context
+     * are reused, the rest are loaded with padded IN lists, and the result follows the order of {@code ids}.
+     * Loaded members can be modified; reused ones are returned as they are, read-only if a query method
+     * of {@link MemberRepository} loaded them.
+     */
+    List<Member> findAllByIds(Collection<Long> ids);
+}
@@ -0,0 +1,20 @@
+package org.javastudy.learnquerydsl.repository;
+
+import org.javastudy.learnquerydsl.entity.Member;
+
+import java.util.Collection;
+import java.util.List;
+
+public class MemberRepositoryImpl implements MemberRepositoryCustom {
+
+    private final MemberJpaRepository memberJpaRepository;
+
+    public MemberRepositoryImpl(MemberJpaRepository memberJpaRepository) {
+        this.memberJpaRepository = memberJpaRepository;
+    }
+
+    @Override
+    public List<Member> findAllByIds(Collection<Long> ids) {
+        return memberJpaRepository.findAllByIds(ids);
+    }
+}
@@ -0,0 +1,17 @@
+package org.javastudy.learnquerydsl.repository;
+
+/**
+ * What answers {@link MemberJpaRepository#search}, chosen with {@code member.search.engine}.
+ */
+public enum MemberSearchEngine {
+
+    /**
+     * The compiled JPQL of {@link MemberSearchQueryCache}, optionally behind {@link MemberSearchResultCache}.
+     */
+    JPA,
+
+    /**
+     * The in-memory {@link MemberSearchSnapshot}; searches inside a read-write transaction still use JPA.
+     */
+    SNAPSHOT
+}
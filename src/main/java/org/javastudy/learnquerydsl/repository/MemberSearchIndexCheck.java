@@ -0,0 +1,247 @@
+package org.javastudy.learnquerydsl.repository;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberSearchCursor;
+import org.javastudy.learnquerydsl.dto.MemberSortKey;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks on startup that every member search query is served by an index: each query shape of
+ * {@link MemberJpaRepository#search}, and each condition shape of the page, count, keyset and streaming
+ * searches.
+ * <p>
+ * Each query is built as its method builds it, with placeholder values, and Hibernate translates it to SQL,
+ * which {@link SqlCapture} takes away before it reaches the database. The SQL is run through H2's
+ * {@code EXPLAIN}; a query whose plan reads a whole table, by table scan or by walking an index without a
+ * condition, is logged as a warning. Shapes without an indexable filter, see
+ * {@link MemberSearchQueryCache#readsEveryMember(int)}, read everything anyway and are not reported.
+ */
+@Slf4j
+@Component
+public class MemberSearchIndexCheck {
+
+    // H2 prints the access path after every table, e.g. "PUBLIC"."MEMBER" "MEMBER0_" /* PUBLIC.IDX_MEMBER_AGE: AGE >= ?1 */;
+    // a full read is either PUBLIC.MEMBER.tableScan or an index without a condition
+    private static final Pattern TABLE_ACCESS = Pattern.compile(
+            "\"\\w+\"\\.\"(\\w+)\" \"\\w+\"\\s*/\\* (\\S+?)(:[^*]*)?\\s*\\*/");
+
+    private static final MemberTeamDto SAMPLE_ROW = new MemberTeamDto(0L, "a", 0, null, null);
+    private static final int SAMPLE_PAGE_SIZE = MemberJpaRepository.DEFAULT_PAGE_SIZE;
+
+    private final DataSource dataSource;
+    private final MemberSearchQueryCache searchQueryCache;
+    private final MemberJpaRepository memberJpaRepository;
+    private final boolean enabled;
+
+    public MemberSearchIndexCheck(DataSource dataSource, MemberSearchQueryCache searchQueryCache,
+                                  MemberJpaRepository memberJpaRepository,
+                                  @Value("${member.search.index-check.enabled:true}") boolean enabled) {
+        this.dataSource = dataSource;
+        this.searchQueryCache = searchQueryCache;
+        this.memberJpaRepository = memberJpaRepository;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+
+        if (!enabled) {
+            return;
+        }
+
+        List<ShapePlan> plans;
+        try {
+            plans = check();
+        }
+        catch (SQLException e) {
+            // EXPLAIN is H2 syntax, other databases are not checked
+            log.info("search index check skipped: {}", e.getMessage());
+            return;
+        }
+
+        int scans = 0;
+        for (ShapePlan plan : plans) {
+            if (plan.isTableScan() && !MemberSearchQueryCache.readsEveryMember(plan.getShape())) {
+                scans++;
+                log.warn("{}{} scans {}:\n{}", plan.getQuery(), plan.getName(), plan.getScannedTables(),
+                        plan.getPlan());
+            }
+        }
+        if (scans == 0) {
+            log.info("search index check: all filtered query shapes use an index");
+        }
+    }
+
+    /**
+     * EXPLAINs every query shape a search can have and returns the plans: those of {@code search} in shape
+     * order, then those of the other searches, by condition shape.
+     */
+    public List<ShapePlan> check() throws SQLException {
+
+        List<Integer> shapes = MemberSearchQueryCache.reachableShapes();
+        MemberSearchCursor afterId = MemberSearchCursor.after(MemberSortKey.ID, SAMPLE_ROW);
+        MemberSearchCursor afterAge = MemberSearchCursor.after(MemberSortKey.AGE, SAMPLE_ROW);
+        List<ShapePlan> plans = new ArrayList<>();
+
+        try (Connection connection = dataSource.getConnection()) {
+            for (int shape : shapes) {
+                plans.add(plan(connection, "search", shape,
+                        () -> searchQueryCache.sampleQuery(shape).getResultList()));
+            }
+
+            for (int shape : shapes) {
+                if (MemberSearchQueryCache.hasCandidates(shape)) {
+                    continue;
+                }
+                MemberSearchCondition condition = MemberSearchQueryCache.sampleCondition(shape);
+                plans.add(plan(connection, "searchPage", shape, () -> memberJpaRepository
+                        .pageContentQuery(condition, PageRequest.of(1, SAMPLE_PAGE_SIZE)).fetch()));
+                plans.add(plan(connection, "searchCount", shape, () -> memberJpaRepository
+                        .countQuery(condition).fetchOne()));
+                for (MemberSearchCursor after : new MemberSearchCursor[] { null, afterId, afterAge }) {
+                    MemberSortKey sortKey = (after == null) ? MemberSortKey.ID : after.getSortKey();
+                    String name = (after == null) ? "searchByCursor" : "searchByCursor(after " + sortKey + ")";
+                    plans.add(plan(connection, name, shape, () -> memberJpaRepository
+                            .cursorQuery(condition, after, sortKey, SAMPLE_PAGE_SIZE + 1).fetch()));
+                }
+                plans.add(plan(connection, "streamSearch", shape, () -> memberJpaRepository
+                        .streamQuery(condition, SAMPLE_PAGE_SIZE).iterate()));
+            }
+        }
+        return plans;
+    }
+
+    private static ShapePlan plan(Connection connection, String query, int shape, Runnable execution)
+            throws SQLException {
+        String sql = SqlCapture.sqlOf(execution);
+        return new ShapePlan(query, shape, MemberSearchQueryCache.describe(shape), sql, explain(connection, sql));
+    }
+
+    private static String explain(Connection connection, String sql) throws SQLException {
+        // parameters may stay unbound, H2 plans the query without their values
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql);
+             ResultSet resultSet = statement.executeQuery()) {
+            StringBuilder plan = new StringBuilder();
+            while (resultSet.next()) {
+                plan.append(resultSet.getString(1));
+            }
+            return plan.toString();
+        }
+    }
+
+    /**
+     * Registers {@link SqlCapture} with Hibernate.
+     */
+    @Configuration(proxyBeanMethods = false)
+    static class SqlCaptureConfig {
+
+        @Bean
+        HibernatePropertiesCustomizer sqlCapture() {
+            return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, new SqlCapture());
+        }
+    }
+
+    /**
+     * Inside {@link #sqlOf(Runnable)}, stops the first statement Hibernate prepares on the thread and hands its
+     * SQL over instead; everywhere else it lets every statement through unchanged.
+     */
+    static final class SqlCapture implements StatementInspector {
+
+        private static final ThreadLocal<Boolean> CAPTURING = new ThreadLocal<>();
+
+        /**
+         * @return the SQL of the first statement {@code execution} prepares; the statement never runs
+         */
+        static String sqlOf(Runnable execution) {
+            CAPTURING.set(Boolean.TRUE);
+            try {
+                execution.run();
+            }
+            catch (RuntimeException e) {
+                for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                    if (cause instanceof CapturedSql) {
+                        return ((CapturedSql) cause).sql;
+                    }
+                }
+                throw e;
+            }
+            finally {
+                CAPTURING.remove();
+            }
+            throw new IllegalStateException("no statement was prepared");
+        }
+
+        @Override
+        public String inspect(String sql) {
+            if (CAPTURING.get() != null) {
+                throw new CapturedSql(sql);
+            }
+            return sql;
+        }
+    }
+
+    private static final class CapturedSql extends RuntimeException {
+
+        private final String sql;
+
+        private CapturedSql(String sql) {
+            super(null, null, false, false);
+            this.sql = sql;
+        }
+    }
+
+    @Getter
+    public static class ShapePlan {
+
+        private final String query;
+        private final int shape;
+        private final String name;
+        private final String sql;
+        private final String plan;
+        private final List<String> scannedTables;
+
+        public ShapePlan(String query, int shape, String name, String sql, String plan) {
+            this.query = query;
+            this.shape = shape;
+            this.name = name;
+            this.sql = sql;
+            this.plan = plan;
+
+            List<String> tables = new ArrayList<>();
+            Matcher matcher = TABLE_ACCESS.matcher(plan);
+            while (matcher.find()) {
+                if (matcher.group(2).endsWith(".tableScan") || matcher.group(3) == null) {
+                    tables.add(matcher.group(1));
+                }
+            }
+            this.scannedTables = Collections.unmodifiableList(tables);
+        }
+
+        public boolean isTableScan() {
+            return !scannedTables.isEmpty();
+        }
+    }
+}
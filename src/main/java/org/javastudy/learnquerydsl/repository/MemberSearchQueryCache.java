@@ -0,0 +1,349 @@
+package org.javastudy.learnquerydsl.repository;
+
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.Param;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUtil;
+import lombok.Getter;
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.javastudy.learnquerydsl.dto.QMemberTeamDto;
+import org.javastudy.learnquerydsl.entity.QMember;
+import org.javastudy.learnquerydsl.entity.QTeam;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compiled JPQL for {@link MemberJpaRepository#search(MemberSearchCondition)}, one entry per query shape.
+ * <p>
+ * A shape is the set of condition fields that are present, plus whether {@link MemberUsernameIndex} narrowed a
+ * {@code usernameContains} down to candidate ids, so there are only 2^7 of them.
+ * Each shape is built with QueryDSL and serialized once, with {@link Param}s in place of values;
+ * afterwards a search only creates the query from the cached string and binds the parameters.
+ * Candidate ids are bound in padded batches of {@link InListPadding}, one query per batch.
+ */
+@Component
+public class MemberSearchQueryCache {
+
+    private static final Param<String> USERNAME = new Param<>(String.class, "username");
+    private static final Param<String> USERNAME_PREFIX = new Param<>(String.class, "usernamePrefix");
+    private static final Param<String> USERNAME_PREFIX_END = new Param<>(String.class, "usernamePrefixEnd");
+    private static final Param<String> USERNAME_PATTERN = new Param<>(String.class, "usernamePattern");
+    @SuppressWarnings("rawtypes")
+    private static final Param<Collection> MEMBER_IDS = new Param<>(Collection.class, "memberIds");
+    private static final Param<String> TEAM_NAME = new Param<>(String.class, "teamName");
+    private static final Param<Integer> AGE_GOE = new Param<>(Integer.class, "ageGoe");
+    private static final Param<Integer> AGE_LOE = new Param<>(Integer.class, "ageLoe");
+
+    private static final int HAS_USERNAME = 1;
+    private static final int HAS_TEAM_NAME = 1 << 1;
+    private static final int HAS_AGE_GOE = 1 << 2;
+    private static final int HAS_AGE_LOE = 1 << 3;
+    private static final int HAS_USERNAME_PREFIX = 1 << 4;
+    private static final int HAS_USERNAME_CONTAINS = 1 << 5;
+    private static final int HAS_MEMBER_IDS = 1 << 6;
+    static final int SHAPE_COUNT = 1 << 7;
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final MemberUsernameIndex usernameIndex;
+    private final QMemberTeamDto projection;
+    private final AtomicReferenceArray<CompiledSearch> shapes = new AtomicReferenceArray<>(SHAPE_COUNT);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public MemberSearchQueryCache(EntityManager em, JPAQueryFactory queryFactory, MemberUsernameIndex usernameIndex) {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.usernameIndex = usernameIndex;
+
+        QMember member = QMember.member;
+        QTeam team = QTeam.team;
+        this.projection = new QMemberTeamDto(
+                member.id.as("memberId"),
+                member.username,
+                member.age,
+                team.id.as("teamId"),
+                team.name.as("teamName")
+        );
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+
+        int shape = shapeOf(condition);
+        List<Long> candidates = null;
+        if ((shape & HAS_USERNAME_CONTAINS) != 0) {
+            candidates = usernameIndex.candidates(condition.getUsernameContains());
+            if (candidates != null && candidates.isEmpty()) {
+                return new ArrayList<>();
+            }
+            if (candidates != null) {
+                shape |= HAS_MEMBER_IDS;
+            }
+        }
+
+        CompiledSearch compiled = shapes.get(shape);
+        if (compiled != null) {
+            hits.increment();
+        }
+        else {
+            misses.increment();
+            // two threads may compile the same shape concurrently; both results are identical
+            compiled = compile(shape);
+            shapes.compareAndSet(shape, null, compiled);
+        }
+
+        Map<ParamExpression<?>, Object> params = params(shape, condition);
+
+        if (candidates == null) {
+            return fetch(compiled, params);
+        }
+        List<MemberTeamDto> result = new ArrayList<>();
+        for (List<Long> batch : InListPadding.batches(candidates)) {
+            params.put(MEMBER_IDS, batch);
+            result.addAll(fetch(compiled, params));
+        }
+        return result;
+    }
+
+    private static Map<ParamExpression<?>, Object> params(int shape, MemberSearchCondition condition) {
+
+        Map<ParamExpression<?>, Object> params = new HashMap<>(8);
+        if ((shape & HAS_USERNAME) != 0) {
+            params.put(USERNAME, condition.getUsername());
+        }
+        if ((shape & HAS_USERNAME_PREFIX) != 0) {
+            params.put(USERNAME_PREFIX, condition.getUsernameStartsWith());
+            params.put(USERNAME_PREFIX_END, MemberUsernameIndex.prefixEnd(condition.getUsernameStartsWith()));
+        }
+        if ((shape & HAS_USERNAME_CONTAINS) != 0) {
+            params.put(USERNAME_PATTERN, MemberUsernameIndex.containsPattern(condition.getUsernameContains()));
+        }
+        if ((shape & HAS_TEAM_NAME) != 0) {
+            params.put(TEAM_NAME, condition.getTeamName());
+        }
+        if ((shape & HAS_AGE_GOE) != 0) {
+            params.put(AGE_GOE, condition.getAgeGoe());
+        }
+        if ((shape & HAS_AGE_LOE) != 0) {
+            params.put(AGE_LOE, condition.getAgeLoe());
+        }
+        return params;
+    }
+
+    private List<MemberTeamDto> fetch(CompiledSearch compiled, Map<ParamExpression<?>, Object> params) {
+
+        List<?> rows = query(compiled, params).getResultList();
+        List<MemberTeamDto> result = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            result.add(projection.newInstance((Object[]) row));
+        }
+        return result;
+    }
+
+    public Stats getStats() {
+        int cached = 0;
+        for (int i = 0; i < SHAPE_COUNT; i++) {
+            if (shapes.get(i) != null) {
+                cached++;
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), cached);
+    }
+
+    private Query query(CompiledSearch compiled, Map<ParamExpression<?>, Object> params) {
+        Query query = em.createQuery(compiled.jpql);
+        JPAUtil.setConstants(query, compiled.constantToLabel, params);
+        return query;
+    }
+
+    /**
+     * The query of a shape bound to placeholder values, for {@link MemberSearchIndexCheck}.
+     */
+    Query sampleQuery(int shape) {
+        Map<ParamExpression<?>, Object> params = params(shape, sampleCondition(shape));
+        if (hasCandidates(shape)) {
+            params.put(MEMBER_IDS, List.of(0L));
+        }
+        return query(compile(shape), params);
+    }
+
+    /**
+     * A condition of the given shape, without its candidate ids; a {@code usernameContains} of one character
+     * is too short for {@link MemberUsernameIndex} and stays a plain like.
+     */
+    static MemberSearchCondition sampleCondition(int shape) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername((shape & HAS_USERNAME) != 0 ? "a" : null);
+        condition.setUsernameStartsWith((shape & HAS_USERNAME_PREFIX) != 0 ? "a" : null);
+        condition.setUsernameContains((shape & HAS_USERNAME_CONTAINS) != 0 ? "a" : null);
+        condition.setTeamName((shape & HAS_TEAM_NAME) != 0 ? "a" : null);
+        condition.setAgeGoe((shape & HAS_AGE_GOE) != 0 ? 0 : null);
+        condition.setAgeLoe((shape & HAS_AGE_LOE) != 0 ? 0 : null);
+        return condition;
+    }
+
+    /**
+     * Whether a shape has candidate ids, which only {@link #search(MemberSearchCondition)} binds.
+     */
+    static boolean hasCandidates(int shape) {
+        return (shape & HAS_MEMBER_IDS) != 0;
+    }
+
+    /**
+     * The shapes a search can have, in shape order: candidate ids only ever come with a {@code usernameContains}.
+     */
+    static List<Integer> reachableShapes() {
+        List<Integer> reachable = new ArrayList<>(SHAPE_COUNT);
+        for (int shape = 0; shape < SHAPE_COUNT; shape++) {
+            if ((shape & HAS_MEMBER_IDS) == 0 || (shape & HAS_USERNAME_CONTAINS) != 0) {
+                reachable.add(shape);
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Whether a shape has no filter that an index can serve: no filter at all, or only a {@code usernameContains}
+     * that {@link MemberUsernameIndex} could not narrow down to candidate ids.
+     */
+    static boolean readsEveryMember(int shape) {
+        return (shape & ~HAS_USERNAME_CONTAINS) == 0;
+    }
+
+    /**
+     * The condition fields present in {@code condition}, e.g. {@code [teamName,ageGoe]}; also the search shape
+     * names of the query metrics.
+     */
+    public static String describe(MemberSearchCondition condition) {
+        return describe(shapeOf(condition));
+    }
+
+    /**
+     * The condition fields of a shape.
+     */
+    static String describe(int shape) {
+        StringJoiner fields = new StringJoiner(",", "[", "]");
+        if ((shape & HAS_USERNAME) != 0) {
+            fields.add("username");
+        }
+        if ((shape & HAS_USERNAME_PREFIX) != 0) {
+            fields.add("usernameStartsWith");
+        }
+        if ((shape & HAS_USERNAME_CONTAINS) != 0) {
+            fields.add("usernameContains");
+        }
+        if ((shape & HAS_MEMBER_IDS) != 0) {
+            fields.add("memberIds");
+        }
+        if ((shape & HAS_TEAM_NAME) != 0) {
+            fields.add("teamName");
+        }
+        if ((shape & HAS_AGE_GOE) != 0) {
+            fields.add("ageGoe");
+        }
+        if ((shape & HAS_AGE_LOE) != 0) {
+            fields.add("ageLoe");
+        }
+        return fields.toString();
+    }
+
+    private CompiledSearch compile(int shape) {
+
+        QMember member = QMember.member;
+        QTeam team = QTeam.team;
+
+        JPAQuery<MemberTeamDto> query = queryFactory
+                .select(projection)
+                .from(member);
+
+        // a team name filter drops members without a team anyway, and an inner join lets
+        // the database start from the team name index instead of reading every member
+        if ((shape & HAS_TEAM_NAME) != 0) {
+            query.join(member.team, team);
+        }
+        else {
+            query.leftJoin(member.team, team);
+        }
+
+        query.where(
+                (shape & HAS_USERNAME) != 0 ? member.username.eq(USERNAME) : null,
+                // a range rather than a like, so the plan uses the username index before the value is bound
+                (shape & HAS_USERNAME_PREFIX) != 0
+                        ? member.username.goe(USERNAME_PREFIX).and(member.username.lt(USERNAME_PREFIX_END)) : null,
+                (shape & HAS_USERNAME_CONTAINS) != 0
+                        ? member.username.like(USERNAME_PATTERN, MemberUsernameIndex.LIKE_ESCAPE) : null,
+                (shape & HAS_MEMBER_IDS) != 0 ? Expressions.booleanOperation(Ops.IN, member.id, MEMBER_IDS) : null,
+                (shape & HAS_TEAM_NAME) != 0 ? team.name.eq(TEAM_NAME) : null,
+                (shape & HAS_AGE_GOE) != 0 ? member.age.goe(AGE_GOE) : null,
+                (shape & HAS_AGE_LOE) != 0 ? member.age.loe(AGE_LOE) : null
+        );
+
+        JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(em), em);
+        serializer.serialize(query.getMetadata(), false, null);
+        return new CompiledSearch(serializer.toString(), Map.copyOf(serializer.getConstantToAllLabels()));
+    }
+
+    private static int shapeOf(MemberSearchCondition condition) {
+        int shape = 0;
+        if (condition.getUsername() != null && condition.getUsername().length() > 0) {
+            shape |= HAS_USERNAME;
+        }
+        if (condition.getUsernameStartsWith() != null && condition.getUsernameStartsWith().length() > 0) {
+            shape |= HAS_USERNAME_PREFIX;
+        }
+        if (condition.getUsernameContains() != null && condition.getUsernameContains().length() > 0) {
+            shape |= HAS_USERNAME_CONTAINS;
+        }
+        if (condition.getTeamName() != null && condition.getTeamName().length() > 0) {
+            shape |= HAS_TEAM_NAME;
+        }
+        if (condition.getAgeGoe() != null) {
+            shape |= HAS_AGE_GOE;
+        }
+        if (condition.getAgeLoe() != null) {
+            shape |= HAS_AGE_LOE;
+        }
+        return shape;
+    }
+
+    private static final class CompiledSearch {
+
+        private final String jpql;
+        private final Map<Object, String> constantToLabel;
+
+        private CompiledSearch(String jpql, Map<Object, String> constantToLabel) {
+            this.jpql = jpql;
+            this.constantToLabel = constantToLabel;
+        }
+    }
+
+    @Getter
+    public static class Stats {
+
+        private final long hits;
+        private final long misses;
+        private final int cachedShapes;
+
+        public Stats(long hits, long misses, int cachedShapes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.cachedShapes = cachedShapes;
+        }
+    }
+}
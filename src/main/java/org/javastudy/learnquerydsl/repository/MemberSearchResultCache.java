@@ -0,0 +1,200 @@
+package org.javastudy.learnquerydsl.repository;
+
+import lombok.Getter;
+import org.javastudy.learnquerydsl.ReplicaLag;
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Optional result cache in front of {@link MemberJpaRepository#search(MemberSearchCondition)}.
+ * <p>
+ * Entries are keyed by the normalized condition, expire after a TTL and the least recently used
+ * entry is evicted once the cache is full. Entries belong to the {@link MemberDataVersion} they were
+ * loaded at; the first lookup after the version moved on drops all of them, and rows loaded while it
+ * moved, or while a replica may not have caught up with it, are not cached.
+ * <p>
+ * Cached lists are shared between callers and must not be modified.
+ */
+@Component
+public class MemberSearchResultCache {
+
+    // rough per-object sizes on a 64-bit JVM with compressed oops
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    private static final int ROW_BYTES = 24 + 2 * 16;
+    private static final int STRING_BYTES = 40;
+
+    private final MemberDataVersion dataVersion;
+    private final ObjectProvider<ReplicaLag> replicaLag;
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    private final LinkedHashMap<MemberSearchCondition, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // version of the data the entries were loaded at
+    private long entriesVersion;
+    private long estimatedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    public MemberSearchResultCache(MemberDataVersion dataVersion, ObjectProvider<ReplicaLag> replicaLag,
+                                   @Value("${member.search.result-cache.enabled:false}") boolean enabled,
+                                   @Value("${member.search.result-cache.max-entries:1000}") int maxEntries,
+                                   @Value("${member.search.result-cache.ttl:30s}") Duration ttl) {
+        this.dataVersion = dataVersion;
+        this.replicaLag = replicaLag;
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<MemberTeamDto> get(MemberSearchCondition condition, Supplier<List<MemberTeamDto>> loader) {
+
+        // inside a read-write transaction there may be unflushed changes the cache has not heard of yet
+        if (!enabled || inReadWriteTransaction()) {
+            return loader.get();
+        }
+
+        MemberSearchCondition key = condition.normalized();
+        long version = dataVersion.current();
+        synchronized (this) {
+            if (version > entriesVersion) {
+                invalidateAll();
+                entriesVersion = version;
+            }
+            // a lookup that read the version before another one moved it on must not see the newer entries
+            Entry entry = (version == entriesVersion) ? entries.get(key) : null;
+            if (entry != null && entry.expiresAt - System.nanoTime() > 0) {
+                hits++;
+                return entry.rows;
+            }
+            if (entry != null) {
+                remove(key);
+                expirations++;
+            }
+            misses++;
+        }
+
+        // a replica that has not caught up yet answers with rows from before the version
+        ReplicaLag lag = replicaLag.getIfAvailable();
+        boolean mayLag = lag != null && lag.mayMiss(dataVersion.getChangedAtMillis());
+        List<MemberTeamDto> rows = Collections.unmodifiableList(loader.get());
+
+        synchronized (this) {
+            // a write happened while loading, the rows may already be stale
+            if (!mayLag && version == entriesVersion && version == dataVersion.current()) {
+                put(key, new Entry(rows, System.nanoTime() + ttlNanos, estimateBytes(rows)));
+            }
+        }
+        return rows;
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations++;
+        entries.clear();
+        estimatedBytes = 0;
+    }
+
+    public synchronized Stats getStats() {
+        long lookups = hits + misses;
+        double hitRate = (lookups == 0) ? 0 : (double) hits / lookups;
+        return new Stats(enabled, entries.size(), hits, misses, hitRate, evictions, expirations, invalidations, estimatedBytes);
+    }
+
+    private void put(MemberSearchCondition key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            estimatedBytes -= previous.bytes;
+        }
+        estimatedBytes += entry.bytes;
+
+        Iterator<Map.Entry<MemberSearchCondition, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            estimatedBytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(MemberSearchCondition key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            estimatedBytes -= removed.bytes;
+        }
+    }
+
+    private static boolean inReadWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private static long estimateBytes(List<MemberTeamDto> rows) {
+        long bytes = ENTRY_OVERHEAD_BYTES + 8L * rows.size();
+        for (MemberTeamDto row : rows) {
+            bytes += ROW_BYTES + stringBytes(row.getUsername()) + stringBytes(row.getTeamName());
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(String value) {
+        return (value == null) ? 0 : STRING_BYTES + value.length();
+    }
+
+    private static final class Entry {
+
+        private final List<MemberTeamDto> rows;
+        private final long expiresAt;
+        private final long bytes;
+
+        private Entry(List<MemberTeamDto> rows, long expiresAt, long bytes) {
+            this.rows = rows;
+            this.expiresAt = expiresAt;
+            this.bytes = bytes;
+        }
+    }
+
+    @Getter
+    public static class Stats {
+
+        private final boolean enabled;
+        private final int size;
+        private final long hits;
+        private final long misses;
+        private final double hitRate;
+        private final long evictions;
+        private final long expirations;
+        private final long invalidations;
+        private final long estimatedBytes;
+
+        public Stats(boolean enabled, int size, long hits, long misses, double hitRate,
+                     long evictions, long expirations, long invalidations, long estimatedBytes) {
+            this.enabled = enabled;
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.hitRate = hitRate;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.invalidations = invalidations;
+            this.estimatedBytes = estimatedBytes;
+        }
+    }
+}
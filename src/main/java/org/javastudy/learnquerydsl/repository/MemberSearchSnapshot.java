@@ -0,0 +1,504 @@
+package org.javastudy.learnquerydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.javastudy.learnquerydsl.PrimaryReads;
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.MemberDataChangedEvent;
+import org.javastudy.learnquerydsl.entity.QMember;
+import org.javastudy.learnquerydsl.entity.QTeam;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory, column oriented copy of member and team data that answers {@link MemberJpaRepository#search}
+ * without a database round trip when {@code member.search.engine} is {@code snapshot}.
+ * <p>
+ * Every member is a row position in primitive columns: {@code long[]} ids, {@code int[]} ages, and
+ * {@code int[]} codes into dictionaries of usernames and teams. A search starts from the bitmap of live
+ * rows and narrows it one predicate at a time, each a branch-free loop over one column that skips words
+ * with no candidates left; only the rows still set at the end are turned into {@link MemberTeamDto}s.
+ * <p>
+ * The snapshot is loaded with one query on first use and then follows committed entity writes through
+ * Hibernate's post-commit listeners: an insert appends a row, an update overwrites its row in place and
+ * a delete clears its live bit, with the columns compacted once half of the rows are dead. Applying the
+ * same write twice is harmless, so a write that commits while the snapshot is loading cannot be counted
+ * twice. Bulk JPQL statements announce themselves with {@link MemberDataChangedEvent#bulk(Class)}, after
+ * whose commit the next search reloads everything.
+ * <p>
+ * Results come in row order, which is member id order as loaded, followed by members inserted since.
+ */
+@Slf4j
+@Component
+public class MemberSearchSnapshot extends MemberChangeListener {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // team code of members without a team; dictionary codes start at 1
+    private static final int NO_TEAM = 0;
+
+    private final JPAQueryFactory queryFactory;
+    private final boolean active;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean stale = true;
+
+    // columns, guarded by lock
+    private int rows;
+    private int liveRows;
+    private long[] ids;
+    private int[] ages;
+    private int[] usernameCodes;
+    private int[] teamCodes;
+    private long[] live;
+    private final Map<Long, Integer> rowOfId = new HashMap<>();
+
+    // dictionaries, guarded by lock
+    private final Map<String, Integer> usernameCodeOf = new HashMap<>();
+    private final List<String> usernames = new ArrayList<>();
+    private final Map<Long, Integer> teamCodeOf = new HashMap<>();
+    private final List<Long> teamIds = new ArrayList<>();
+    private final List<String> teamNames = new ArrayList<>();
+
+    private long loads;
+    private long compactions;
+    private final LongAdder searches = new LongAdder();
+
+    public MemberSearchSnapshot(EntityManagerFactory emf, ObjectProvider<PrimaryReads> primaryReads,
+                                JPAQueryFactory queryFactory,
+                                @Value("${member.search.engine:jpa}") MemberSearchEngine engine) {
+        super(emf, primaryReads);
+        this.queryFactory = queryFactory;
+        this.active = engine == MemberSearchEngine.SNAPSHOT;
+        clear(INITIAL_CAPACITY);
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Whether a search may be answered from the snapshot: it must be switched on, and the caller must not be
+     * inside a read-write transaction, whose uncommitted changes only the database can see.
+     */
+    public boolean canServe() {
+        return active && !(TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+
+        if (stale) {
+            loadIfStale();
+        }
+
+        lock.readLock().lock();
+        try {
+            searches.increment();
+            long[] candidates = Arrays.copyOf(live, words(rows));
+
+            String username = condition.getUsername();
+            if (username != null && username.length() > 0) {
+                Integer code = usernameCodeOf.get(username);
+                if (code == null) {
+                    return Collections.emptyList();
+                }
+                retainEqual(candidates, usernameCodes, rows, code);
+            }
+
+            String prefix = condition.getUsernameStartsWith();
+            String fragment = condition.getUsernameContains();
+            if ((prefix != null && prefix.length() > 0) || (fragment != null && fragment.length() > 0)) {
+                // match the dictionary once instead of every row
+                boolean[] matches = new boolean[usernames.size()];
+                boolean any = false;
+                for (int code = 0; code < matches.length; code++) {
+                    String value = usernames.get(code);
+                    if (value != null
+                            && (prefix == null || prefix.length() == 0 || value.startsWith(prefix))
+                            && (fragment == null || fragment.length() == 0 || value.contains(fragment))) {
+                        matches[code] = true;
+                        any = true;
+                    }
+                }
+                if (!any) {
+                    return Collections.emptyList();
+                }
+                retainIn(candidates, usernameCodes, rows, matches);
+            }
+
+            String teamName = condition.getTeamName();
+            if (teamName != null && teamName.length() > 0) {
+                // several teams may share a name
+                boolean[] matches = new boolean[teamNames.size()];
+                boolean any = false;
+                for (int code = 1; code < matches.length; code++) {
+                    if (teamName.equals(teamNames.get(code))) {
+                        matches[code] = true;
+                        any = true;
+                    }
+                }
+                if (!any) {
+                    return Collections.emptyList();
+                }
+                retainIn(candidates, teamCodes, rows, matches);
+            }
+
+            if (condition.getAgeGoe() != null || condition.getAgeLoe() != null) {
+                retainBetween(candidates, ages, rows,
+                        condition.getAgeGoe() == null ? Integer.MIN_VALUE : condition.getAgeGoe(),
+                        condition.getAgeLoe() == null ? Integer.MAX_VALUE : condition.getAgeLoe());
+            }
+
+            return collect(candidates);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the whole snapshot with the current database content.
+     */
+    public void reload() {
+        stale = true;
+        loadIfStale();
+    }
+
+    private void loadIfStale() {
+        lock.writeLock().lock();
+        try {
+            if (!stale) {
+                return;
+            }
+            load();
+            stale = false;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Stats getStats() {
+        lock.readLock().lock();
+        try {
+            long bytes = rows * (8L + 4 + 4 + 4) + words(rows) * 8L + rowOfId.size() * 48L;
+            for (String value : usernames) {
+                bytes += (value == null) ? 0 : 40 + value.length();
+            }
+            return new Stats(active, !stale, rows, liveRows, usernames.size(), teamIds.size() - 1,
+                    bytes, loads, compactions, searches.sum());
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected boolean isListening() {
+        return active;
+    }
+
+    @Override
+    protected boolean follows(Class<?> entityType) {
+        return entityType == Member.class || entityType == Team.class;
+    }
+
+    @Override
+    protected void onBulkChange() {
+        stale = true;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        apply(event.getEntity(), event.getPersister(), event.getState(), false);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        apply(event.getEntity(), event.getPersister(), event.getState(), false);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        apply(event.getEntity(), event.getPersister(), event.getDeletedState(), true);
+    }
+
+    private void apply(Object entity, EntityPersister persister, Object[] state, boolean deleted) {
+
+        lock.writeLock().lock();
+        try {
+            // the next search reloads anyway, and the database already has this write
+            if (stale) {
+                return;
+            }
+            if (entity instanceof Team) {
+                if (!deleted) {
+                    Team team = (Team) entity;
+                    putTeam(team.getId(), team.getName());
+                }
+                // a deleted team has no members left to match, its dictionary entry is simply unused
+                return;
+            }
+
+            Member member = (Member) entity;
+            if (deleted) {
+                removeRow(member.getId());
+                return;
+            }
+
+            Team team = (Team) property(persister, state, "team");
+            int teamCode = NO_TEAM;
+            if (team != null) {
+                Integer code = teamCodeOf.get(team.getId());
+                if (code == null && !Hibernate.isInitialized(team)) {
+                    // a team the snapshot has not seen, and its name is not at hand
+                    stale = true;
+                    return;
+                }
+                teamCode = (code != null) ? code : putTeam(team.getId(), team.getName());
+            }
+            putRow(member.getId(), (String) property(persister, state, "username"), age(persister, state), teamCode);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void load() {
+        QMember member = QMember.member;
+        QTeam team = QTeam.team;
+
+        List<Tuple> teamRows = loadCommitted(() -> queryFactory
+                .select(team.id, team.name)
+                .from(team)
+                .fetch());
+        List<Tuple> memberRows = loadCommitted(() -> queryFactory
+                .select(member.id, member.username, member.age, team.id, team.name)
+                .from(member)
+                .leftJoin(member.team, team)
+                .orderBy(member.id.asc())
+                .fetch());
+
+        clear(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(memberRows.size()) << 1));
+        for (Tuple row : teamRows) {
+            putTeam(row.get(team.id), row.get(team.name));
+        }
+        for (Tuple row : memberRows) {
+            // the team may have been created after the team query
+            Long teamId = row.get(team.id);
+            putRow(row.get(member.id), row.get(member.username), row.get(member.age),
+                    teamId == null ? NO_TEAM : putTeam(teamId, row.get(team.name)));
+        }
+
+        loads++;
+        log.info("member search snapshot loaded {} members of {} teams", rows, teamRows.size());
+    }
+
+    private void clear(int capacity) {
+        rows = 0;
+        liveRows = 0;
+        ids = new long[capacity];
+        ages = new int[capacity];
+        usernameCodes = new int[capacity];
+        teamCodes = new int[capacity];
+        live = new long[words(capacity)];
+        rowOfId.clear();
+        usernameCodeOf.clear();
+        usernames.clear();
+        teamCodeOf.clear();
+        teamIds.clear();
+        teamNames.clear();
+        // code 0 stands for "no team"
+        teamIds.add(null);
+        teamNames.add(null);
+    }
+
+    private int putTeam(Long teamId, String name) {
+        Integer code = teamCodeOf.get(teamId);
+        if (code != null) {
+            teamNames.set(code, name);
+            return code;
+        }
+        teamIds.add(teamId);
+        teamNames.add(name);
+        teamCodeOf.put(teamId, teamIds.size() - 1);
+        return teamIds.size() - 1;
+    }
+
+    private void putRow(long id, String username, int age, int teamCode) {
+        Integer row = rowOfId.get(id);
+        if (row == null) {
+            if (rows == ids.length) {
+                grow();
+            }
+            row = rows++;
+            rowOfId.put(id, row);
+            ids[row] = id;
+            live[row >>> 6] |= 1L << row;
+            liveRows++;
+        }
+        ages[row] = age;
+        usernameCodes[row] = usernameCodeOf.computeIfAbsent(username, value -> {
+            usernames.add(value);
+            return usernames.size() - 1;
+        });
+        teamCodes[row] = teamCode;
+    }
+
+    private void removeRow(long id) {
+        Integer row = rowOfId.remove(id);
+        if (row == null) {
+            return;
+        }
+        live[row >>> 6] &= ~(1L << row);
+        liveRows--;
+        if (rows >= INITIAL_CAPACITY && liveRows < rows / 2) {
+            compact();
+        }
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        ages = Arrays.copyOf(ages, capacity);
+        usernameCodes = Arrays.copyOf(usernameCodes, capacity);
+        teamCodes = Arrays.copyOf(teamCodes, capacity);
+        live = Arrays.copyOf(live, words(capacity));
+    }
+
+    private void compact() {
+        int to = 0;
+        for (int from = 0; from < rows; from++) {
+            if ((live[from >>> 6] & (1L << from)) != 0) {
+                ids[to] = ids[from];
+                ages[to] = ages[from];
+                usernameCodes[to] = usernameCodes[from];
+                teamCodes[to] = teamCodes[from];
+                rowOfId.put(ids[to], to);
+                to++;
+            }
+        }
+        rows = to;
+        Arrays.fill(live, 0);
+        for (int row = 0; row < rows; row++) {
+            live[row >>> 6] |= 1L << row;
+        }
+        compactions++;
+    }
+
+    private List<MemberTeamDto> collect(long[] candidates) {
+        List<MemberTeamDto> result = new ArrayList<>();
+        for (int word = 0; word < candidates.length; word++) {
+            long bits = candidates[word];
+            while (bits != 0) {
+                int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int teamCode = teamCodes[row];
+                result.add(new MemberTeamDto(ids[row], usernames.get(usernameCodes[row]), ages[row],
+                        teamIds.get(teamCode), teamNames.get(teamCode)));
+            }
+        }
+        return result;
+    }
+
+    private static void retainEqual(long[] candidates, int[] column, int rows, int value) {
+        for (int word = 0; word < candidates.length; word++) {
+            if (candidates[word] == 0) {
+                continue;
+            }
+            int base = word << 6;
+            int end = Math.min(64, rows - base);
+            long mask = 0;
+            for (int bit = 0; bit < end; bit++) {
+                mask |= (column[base + bit] == value ? 1L : 0L) << bit;
+            }
+            candidates[word] &= mask;
+        }
+    }
+
+    private static void retainIn(long[] candidates, int[] column, int rows, boolean[] values) {
+        for (int word = 0; word < candidates.length; word++) {
+            if (candidates[word] == 0) {
+                continue;
+            }
+            int base = word << 6;
+            int end = Math.min(64, rows - base);
+            long mask = 0;
+            for (int bit = 0; bit < end; bit++) {
+                mask |= (values[column[base + bit]] ? 1L : 0L) << bit;
+            }
+            candidates[word] &= mask;
+        }
+    }
+
+    private static void retainBetween(long[] candidates, int[] column, int rows, int min, int max) {
+        for (int word = 0; word < candidates.length; word++) {
+            if (candidates[word] == 0) {
+                continue;
+            }
+            int base = word << 6;
+            int end = Math.min(64, rows - base);
+            long mask = 0;
+            for (int bit = 0; bit < end; bit++) {
+                int value = column[base + bit];
+                mask |= (value >= min & value <= max ? 1L : 0L) << bit;
+            }
+            candidates[word] &= mask;
+        }
+    }
+
+    private static int words(int rows) {
+        return (rows + 63) >>> 6;
+    }
+
+    @Getter
+    public static class Stats {
+
+        private final boolean active;
+        private final boolean loaded;
+        private final int rows;
+        private final int liveRows;
+        private final int usernames;
+        private final int teams;
+        private final long estimatedBytes;
+        private final long loads;
+        private final long compactions;
+        private final long searches;
+
+        public Stats(boolean active, boolean loaded, int rows, int liveRows, int usernames, int teams,
+                     long estimatedBytes, long loads, long compactions, long searches) {
+            this.active = active;
+            this.loaded = loaded;
+            this.rows = rows;
+            this.liveRows = liveRows;
+            this.usernames = usernames;
+            this.teams = teams;
+            this.estimatedBytes = estimatedBytes;
+            this.loads = loads;
+            this.compactions = compactions;
+            this.searches = searches;
+        }
+    }
+}
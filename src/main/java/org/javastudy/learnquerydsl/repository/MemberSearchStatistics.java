@@ -0,0 +1,153 @@
+package org.javastudy.learnquerydsl.repository;
+
+import lombok.Getter;
+import org.javastudy.learnquerydsl.dto.MemberCountEstimate;
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Selectivity statistics for {@link MemberSearchCondition}s: an equi-width age histogram per team,
+ * plus one for members without a team, which together also give the per-team cardinalities.
+ * <p>
+ * A condition on team name and age is estimated from the histograms of the matching teams: buckets inside
+ * the age range count fully, buckets cut by its ends count in proportion to the overlap, assuming ages are
+ * spread evenly within a bucket. The bounds of the estimate count those edge buckets as all or nothing,
+ * so the true count, as of the statistics, always lies between them. Usernames are not tracked; with any
+ * username filter only the upper bound is informative.
+ * <p>
+ * The buckets are summed from the per team age multisets of {@link TeamStatistics} as they are read, so the
+ * histograms follow committed writes, bulk statements and reconciliation exactly as those do.
+ */
+@Component
+public class MemberSearchStatistics {
+
+    private final TeamStatistics teamStatistics;
+    private final int bucketWidth;
+
+    public MemberSearchStatistics(TeamStatistics teamStatistics,
+                                  @Value("${member.search.stats.age-bucket-width:10}") int bucketWidth) {
+        this.teamStatistics = teamStatistics;
+        this.bucketWidth = bucketWidth;
+    }
+
+    /**
+     * Whether estimates come from maintained statistics; without {@link TeamStatistics} every estimate
+     * runs its GROUP BY, and an exact count is cheaper.
+     */
+    public boolean isAvailable() {
+        return teamStatistics.isEnabled();
+    }
+
+    /**
+     * Estimated number of members matching the condition, see the class comment for the bounds.
+     */
+    public MemberCountEstimate estimate(MemberSearchCondition condition) {
+
+        int ageGoe = (condition.getAgeGoe() == null) ? Integer.MIN_VALUE : condition.getAgeGoe();
+        int ageLoe = (condition.getAgeLoe() == null) ? Integer.MAX_VALUE : condition.getAgeLoe();
+        String teamName = condition.getTeamName();
+
+        Tally tally = new Tally(ageGoe, ageLoe);
+        if (ageGoe <= ageLoe) {
+            // whole buckets, including the ages outside the range that share a bucket with its ends
+            int from = (int) Math.max(Integer.MIN_VALUE, (long) Math.floorDiv(ageGoe, bucketWidth) * bucketWidth);
+            int to = (int) Math.min(Integer.MAX_VALUE,
+                    (long) Math.floorDiv(ageLoe, bucketWidth) * bucketWidth + bucketWidth - 1);
+            teamStatistics.forEachAges((teamName == null || teamName.length() == 0) ? null : teamName,
+                    (teamId, ages) -> tally.addBuckets(ages.subMap(from, true, to, true)));
+        }
+
+        if (condition.hasUsernameFilter()) {
+            return new MemberCountEstimate(tally.upper, 0, tally.upper, false);
+        }
+        long count = Math.max(tally.lower, Math.min(tally.upper, Math.round(tally.estimate)));
+        return new MemberCountEstimate(count, tally.lower, tally.upper, false);
+    }
+
+    public Stats getStats() {
+        long[] totals = new long[3];
+        teamStatistics.forEachAges(null, (teamId, ages) -> {
+            Integer bucket = null;
+            for (Map.Entry<Integer, Long> age : ages.entrySet()) {
+                int current = Math.floorDiv(age.getKey(), bucketWidth);
+                if (bucket == null || bucket != current) {
+                    totals[2]++;
+                    bucket = current;
+                }
+                totals[0] += age.getValue();
+            }
+            if (teamId != null) {
+                totals[1]++;
+            }
+        });
+        return new Stats(totals[0], (int) totals[1], (int) totals[2], bucketWidth, teamStatistics.getRebuilds());
+    }
+
+    private final class Tally {
+
+        private final int ageGoe;
+        private final int ageLoe;
+        private double estimate;
+        private long lower;
+        private long upper;
+
+        Tally(int ageGoe, int ageLoe) {
+            this.ageGoe = ageGoe;
+            this.ageLoe = ageLoe;
+        }
+
+        /**
+         * Sums ascending ages into their buckets and counts each bucket against the age range.
+         */
+        void addBuckets(NavigableMap<Integer, Long> ages) {
+            int bucket = 0;
+            long members = 0;
+            for (Map.Entry<Integer, Long> age : ages.entrySet()) {
+                int current = Math.floorDiv(age.getKey(), bucketWidth);
+                if (members > 0 && current != bucket) {
+                    addBucket(bucket, members);
+                    members = 0;
+                }
+                bucket = current;
+                members += age.getValue();
+            }
+            if (members > 0) {
+                addBucket(bucket, members);
+            }
+        }
+
+        private void addBucket(int bucket, long members) {
+            long bucketStart = (long) bucket * bucketWidth;
+            long bucketEnd = bucketStart + bucketWidth - 1;
+            long overlap = Math.min(ageLoe, bucketEnd) - Math.max(ageGoe, bucketStart) + 1;
+
+            upper += members;
+            if (overlap == bucketWidth) {
+                lower += members;
+            }
+            estimate += (double) members * overlap / bucketWidth;
+        }
+    }
+
+    @Getter
+    public static class Stats {
+
+        private final long members;
+        private final int teams;
+        private final int buckets;
+        private final int bucketWidth;
+        private final long rebuilds;
+
+        public Stats(long members, int teams, int buckets, int bucketWidth, long rebuilds) {
+            this.members = members;
+            this.teams = teams;
+            this.buckets = buckets;
+            this.bucketWidth = bucketWidth;
+            this.rebuilds = rebuilds;
+        }
+    }
+}
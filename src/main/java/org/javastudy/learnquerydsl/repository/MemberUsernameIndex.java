@@ -0,0 +1,512 @@
+package org.javastudy.learnquerydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.javastudy.learnquerydsl.PrimaryReads;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.QMember;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Trigram index over {@code Member.username}, which narrows a {@code usernameContains} search down to a few
+ * candidate member ids instead of a {@code like '%x%'} over every member.
+ * <p>
+ * Every three consecutive characters of a username are a trigram, and every trigram has a posting list: the
+ * sorted ids of the members whose username contains it. A member whose username contains a fragment contains
+ * all of the fragment's trigrams, so intersecting their posting lists, smallest first, gives a superset of the
+ * matches. The query still applies the {@code like}, which drops candidates whose trigrams are not adjacent.
+ * Matching is case sensitive, like the {@code like} it narrows. A {@code usernameStartsWith} needs no help: it is
+ * a range of the username index, see {@link #prefixEnd(String)}.
+ * <p>
+ * Fragments shorter than three characters have no trigram, and fragments whose intersection has more than
+ * {@code member.search.username-index.max-candidates} ids are not selective enough to be worth an id list;
+ * for both {@link #candidates(String)} answers null and the search falls back to the plain {@code like}.
+ * <p>
+ * The index is built with one query on a background thread, first when it is used and again when it is used
+ * after a bulk statement; until the new index is swapped in, {@link #candidates(String)} answers null and
+ * searches use the plain {@code like}. Entity writes that commit while the build reads are replayed onto its
+ * result, which is harmless for those it already saw. Uncommitted usernames are not in the index, so it must
+ * not be used inside a read-write transaction, see {@link #canServe()}.
+ */
+@Slf4j
+@Component
+public class MemberUsernameIndex extends MemberChangeListener {
+
+    static final int GRAM = 3;
+    static final char LIKE_ESCAPE = '!';
+
+    private final JPAQueryFactory queryFactory;
+    private final boolean enabled;
+    private final int maxCandidates;
+
+    private final ExecutorService builder;
+    private final AtomicBoolean building = new AtomicBoolean();
+    // one build at a time, whether in the background or through rebuild()
+    private final Object buildLock = new Object();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean stale = true;
+    // guarded by lock: trigram -> posting list, the bulk statements so far, and the writes of a running build
+    private Map<Long, PostingList> postings = new HashMap<>();
+    private long bulkChanges;
+    private List<Change> pending;
+
+    private long builds;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    public MemberUsernameIndex(EntityManagerFactory emf, ObjectProvider<PrimaryReads> primaryReads,
+                               JPAQueryFactory queryFactory,
+                               @Value("${member.search.username-index.enabled:true}") boolean enabled,
+                               @Value("${member.search.username-index.max-candidates:4096}") int maxCandidates) {
+        super(emf, primaryReads);
+        this.queryFactory = queryFactory;
+        this.enabled = enabled;
+        this.maxCandidates = maxCandidates;
+        this.builder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "member-username-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Whether the index may narrow a search: it must be switched on, and the caller must not be inside a
+     * read-write transaction, whose uncommitted usernames only the database can see.
+     */
+    public boolean canServe() {
+        return enabled && !(TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+    }
+
+    /**
+     * Ids of the members whose username may contain {@code fragment}, in ascending order, a superset of those
+     * that do, and at most {@code member.search.username-index.max-candidates} of them; null when the index
+     * cannot narrow the search down, see the class comment.
+     */
+    public List<Long> candidates(String fragment) {
+
+        if (!canServe() || fragment.length() < GRAM) {
+            fallbacks.increment();
+            return null;
+        }
+
+        lock.readLock().lock();
+        try {
+            if (stale) {
+                buildInBackground();
+                fallbacks.increment();
+                return null;
+            }
+            lookups.increment();
+            List<PostingList> lists = new ArrayList<>();
+            for (long gram : grams(fragment)) {
+                PostingList list = postings.get(gram);
+                if (list == null) {
+                    return List.of();
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+
+            PostingList smallest = lists.get(0);
+            long[] candidates = Arrays.copyOf(smallest.ids, smallest.size);
+            int count = smallest.size;
+            for (PostingList list : lists.subList(1, lists.size())) {
+                count = list.retainAll(candidates, count);
+                if (count == 0) {
+                    return List.of();
+                }
+            }
+            if (count > maxCandidates) {
+                fallbacks.increment();
+                return null;
+            }
+
+            List<Long> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(candidates[i]);
+            }
+            return result;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the index from the current database content on the calling thread.
+     */
+    public void rebuild() {
+        synchronized (buildLock) {
+            build();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+
+    public Stats getStats() {
+        lock.readLock().lock();
+        try {
+            long entries = 0;
+            long bytes = 0;
+            for (PostingList list : postings.values()) {
+                entries += list.size;
+                bytes += 64 + 8L * list.ids.length;
+            }
+            return new Stats(enabled, !stale, postings.size(), entries, bytes, builds, lookups.sum(),
+                    fallbacks.sum());
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected boolean isListening() {
+        return enabled;
+    }
+
+    @Override
+    protected boolean follows(Class<?> entityType) {
+        return entityType == Member.class;
+    }
+
+    @Override
+    protected void onBulkChange() {
+        lock.writeLock().lock();
+        try {
+            stale = true;
+            bulkChanges++;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Member) {
+            apply((Member) event.getEntity(), null, username(event.getPersister(), event.getState()));
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        if (event.getOldState() == null) {
+            // merged from a detached copy, the previous username is unknown
+            onBulkChange();
+            return;
+        }
+        apply((Member) event.getEntity(), username(event.getPersister(), event.getOldState()),
+                username(event.getPersister(), event.getState()));
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Member) {
+            apply((Member) event.getEntity(), username(event.getPersister(), event.getDeletedState()), null);
+        }
+    }
+
+    private static String username(EntityPersister persister, Object[] state) {
+        return (String) property(persister, state, "username");
+    }
+
+    private void apply(Member member, String oldUsername, String newUsername) {
+
+        Set<Long> removed = grams(oldUsername);
+        Set<Long> added = grams(newUsername);
+        Set<Long> unchanged = new HashSet<>(removed);
+        unchanged.retainAll(added);
+        removed.removeAll(unchanged);
+        added.removeAll(unchanged);
+        Change change = new Change(member.getId(), removed, added);
+
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.add(change);
+            }
+            // a stale index is rebuilt from the database, which already has this write
+            if (!stale) {
+                change.applyTo(postings);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void buildInBackground() {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            builder.execute(() -> {
+                try {
+                    rebuild();
+                }
+                catch (RuntimeException e) {
+                    log.warn("member username index build failed, searches keep using like", e);
+                }
+                finally {
+                    building.set(false);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            // shutting down
+            building.set(false);
+        }
+    }
+
+    /**
+     * Reads every username without holding the lock, so lookups fall back and writes are recorded meanwhile,
+     * then replays those writes onto the result and swaps it in. Stays stale if a bulk statement committed in
+     * between. Called holding {@link #buildLock}.
+     */
+    private void build() {
+        QMember member = QMember.member;
+
+        long bulkChangesSeen;
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+            bulkChangesSeen = bulkChanges;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<Long, PostingList> built = new HashMap<>();
+        int members;
+        boolean loaded = false;
+        try {
+            List<Tuple> rows = loadCommitted(() -> queryFactory
+                    .select(member.id, member.username)
+                    .from(member)
+                    .orderBy(member.id.asc())
+                    .fetch());
+
+            // ids come in ascending order, so every add appends
+            for (Tuple row : rows) {
+                long id = row.get(member.id);
+                for (long gram : grams(row.get(member.username))) {
+                    built.computeIfAbsent(gram, key -> new PostingList()).add(id);
+                }
+            }
+            members = rows.size();
+            loaded = true;
+        }
+        finally {
+            lock.writeLock().lock();
+            try {
+                if (loaded) {
+                    pending.forEach(change -> change.applyTo(built));
+                    postings = built;
+                    builds++;
+                    stale = bulkChanges != bulkChangesSeen;
+                }
+                pending = null;
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+        log.info("member username index built: {} trigrams of {} members", built.size(), members);
+    }
+
+    /**
+     * A {@code like} pattern, with {@link #LIKE_ESCAPE}, matching the strings that contain {@code fragment}.
+     */
+    static String containsPattern(String fragment) {
+        StringBuilder pattern = new StringBuilder(fragment.length() + 2).append('%');
+        for (int i = 0; i < fragment.length(); i++) {
+            char c = fragment.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                pattern.append(LIKE_ESCAPE);
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+
+    /**
+     * The smallest string above every string that starts with {@code prefix}, so that a prefix search is the
+     * index range {@code username >= prefix and username < prefixEnd}. Trailing U+FFFF, which has no
+     * successor, are dropped first; a prefix of nothing but these noncharacters, which usernames do not
+     * contain, gets one more of them as its end.
+     * <p>
+     * The range assumes the database compares usernames char by char, as H2 does without a {@code SET COLLATION}.
+     * Under a linguistic or case insensitive collation the strings that start with {@code prefix} are not one
+     * range of it, and the prefix search has to become a {@code like 'prefix%'} again.
+     */
+    static String prefixEnd(String prefix) {
+        int last = prefix.length() - 1;
+        while (last >= 0 && prefix.charAt(last) == Character.MAX_VALUE) {
+            last--;
+        }
+        if (last < 0) {
+            return prefix + Character.MAX_VALUE;
+        }
+        return prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+    }
+
+    /**
+     * The distinct trigrams of {@code value}, each packed into a long as three 16-bit chars.
+     */
+    static Set<Long> grams(String value) {
+        Set<Long> grams = new HashSet<>();
+        if (value == null) {
+            return grams;
+        }
+        for (int i = 0; i + GRAM <= value.length(); i++) {
+            grams.add(((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2));
+        }
+        return grams;
+    }
+
+    /**
+     * The trigrams one committed write removed from and added to a member.
+     */
+    private static final class Change {
+
+        private final long id;
+        private final Set<Long> removed;
+        private final Set<Long> added;
+
+        Change(long id, Set<Long> removed, Set<Long> added) {
+            this.id = id;
+            this.removed = removed;
+            this.added = added;
+        }
+
+        void applyTo(Map<Long, PostingList> postings) {
+            for (long gram : removed) {
+                PostingList list = postings.get(gram);
+                if (list != null && list.remove(id) && list.size == 0) {
+                    postings.remove(gram);
+                }
+            }
+            for (long gram : added) {
+                postings.computeIfAbsent(gram, key -> new PostingList()).add(id);
+            }
+        }
+    }
+
+    /**
+     * Sorted, growable list of member ids.
+     */
+    private static final class PostingList {
+
+        private long[] ids = new long[4];
+        private int size;
+
+        void add(long id) {
+            // new members get increasing ids, so this is almost always an append
+            if (size == 0 || ids[size - 1] < id) {
+                ensureCapacity();
+                ids[size++] = id;
+                return;
+            }
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            ensureCapacity();
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+
+        boolean remove(long id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        /**
+         * Keeps the first {@code count} {@code candidates} that are in this list, in place.
+         *
+         * @return how many are kept
+         */
+        int retainAll(long[] candidates, int count) {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (Arrays.binarySearch(ids, 0, size, candidates[i]) >= 0) {
+                    candidates[kept++] = candidates[i];
+                }
+            }
+            return kept;
+        }
+
+        private void ensureCapacity() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+        }
+    }
+
+    @Getter
+    public static class Stats {
+
+        private final boolean enabled;
+        private final boolean built;
+        private final int trigrams;
+        private final long postings;
+        private final long estimatedBytes;
+        private final long builds;
+        private final long lookups;
+        private final long fallbacks;
+
+        public Stats(boolean enabled, boolean built, int trigrams, long postings, long estimatedBytes, long builds,
+                     long lookups, long fallbacks) {
+            this.enabled = enabled;
+            this.built = built;
+            this.trigrams = trigrams;
+            this.postings = postings;
+            this.estimatedBytes = estimatedBytes;
+            this.builds = builds;
+            this.lookups = lookups;
+            this.fallbacks = fallbacks;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.javastudy.learnquerydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.javastudy.learnquerydsl.dto.MemberDto;
+import org.javastudy.learnquerydsl.dto.TeamMembersDto;
+import org.javastudy.learnquerydsl.entity.QMember;
+import org.javastudy.learnquerydsl.entity.QTeam;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@Transactional(readOnly = true)
+public class TeamJpaRepository {
+
+    /**
+     * Each team of a page lists up to {@code team.members.max-per-team} members, so pages of teams are
+     * smaller than pages of members.
+     */
+    public static final int MAX_PAGE_SIZE = 50;
+
+    // JPQL has no window functions; the first members of each team by member id
+    private static final String FIRST_MEMBERS_SQL = "select team_id, username, age from ("
+            + " select m.team_id, m.username, m.age, m.id,"
+            + " row_number() over (partition by m.team_id order by m.id) as position"
+            + " from member m where m.team_id in (:teamIds)) ranked"
+            + " where position <= :maxPerTeam"
+            + " order by team_id, id";
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final int maxMembersPerTeam;
+
+    public TeamJpaRepository(EntityManager em, JPAQueryFactory queryFactory,
+                             @Value("${team.members.max-per-team:100}") int maxMembersPerTeam) {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.maxMembersPerTeam = maxMembersPerTeam;
+    }
+
+    /**
+     * A page of teams in team id order, each with its members, in three queries whatever the page size:
+     * the teams, one {@code GROUP BY} counting the members of all of them, and one query for the first
+     * {@code team.members.max-per-team} members of each, numbered per team by {@code row_number()}.
+     * <p>
+     * No query loads entities or joins the other side, so a team row is never repeated per member the way a
+     * fetch join of {@code Team.members} repeats it, and a large team adds no more rows than a small one.
+     * The page size is capped at {@link #MAX_PAGE_SIZE}.
+     */
+    @SuppressWarnings("unchecked")
+    public List<TeamMembersDto> findTeamsWithMembers(Pageable pageable) {
+
+        QTeam team = QTeam.team;
+        QMember member = QMember.member;
+
+        List<Tuple> teams = queryFactory
+                .select(team.id, team.name)
+                .from(team)
+                .orderBy(team.id.asc())
+                .offset(pageable.isPaged() ? pageable.getOffset() : 0)
+                .limit(pageable.isPaged() ? Math.min(pageable.getPageSize(), MAX_PAGE_SIZE) : MAX_PAGE_SIZE)
+                .fetch();
+        if (teams.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<Long, List<MemberDto>> membersOfTeam = new LinkedHashMap<>();
+        for (Tuple row : teams) {
+            membersOfTeam.put(row.get(team.id), new ArrayList<>());
+        }
+        Map<Long, Long> countOfTeam = new HashMap<>();
+
+        // a page never has more teams than the largest padded IN list, so each of these is a single query
+        for (List<Long> batch : InListPadding.batches(membersOfTeam.keySet())) {
+            for (Tuple row : queryFactory
+                    .select(member.team.id, member.count())
+                    .from(member)
+                    .where(member.team.id.in(batch))
+                    .groupBy(member.team.id)
+                    .fetch()) {
+                countOfTeam.put(row.get(member.team.id), row.get(member.count()));
+            }
+
+            List<Object[]> rows = em.createNativeQuery(FIRST_MEMBERS_SQL)
+                    .setParameter("teamIds", batch)
+                    .setParameter("maxPerTeam", maxMembersPerTeam)
+                    .getResultList();
+            for (Object[] row : rows) {
+                membersOfTeam.get(((Number) row[0]).longValue())
+                        .add(new MemberDto((String) row[1], ((Number) row[2]).intValue()));
+            }
+        }
+
+        List<TeamMembersDto> result = new ArrayList<>(teams.size());
+        for (Tuple row : teams) {
+            Long teamId = row.get(team.id);
+            result.add(new TeamMembersDto(teamId, row.get(team.name), countOfTeam.getOrDefault(teamId, 0L),
+                    membersOfTeam.get(teamId)));
+        }
+        return result;
+    }
+}
@@ -2,6 +2,21 @@ package org.javastudy.learnquerydsl.repository;
 
 import org.javastudy.learnquerydsl.entity.Team;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import javax.persistence.QueryHint;
+import java.util.Optional;
 
 public interface TeamRepository extends JpaRepository<Team, Long> {
+
+    String BY_NAME_REGION = "team-by-name";
+
+    /**
+     * Served from the query cache until the team table is written; the team itself then comes from the team region.
+     */
+    @QueryHints({
+            @QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"),
+            @QueryHint(name = org.hibernate.annotations.QueryHints.CACHE_REGION, value = BY_NAME_REGION)
+    })
+    Optional<Team> findByName(String name);
 }
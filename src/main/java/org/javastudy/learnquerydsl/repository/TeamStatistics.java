@@ -0,0 +1,417 @@
+package org.javastudy.learnquerydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.javastudy.learnquerydsl.PrimaryReads;
+import org.javastudy.learnquerydsl.dto.TeamStatsDto;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.QMember;
+import org.javastudy.learnquerydsl.entity.QTeam;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Per team member count and age aggregates, kept up to date as members change instead of being
+ * recomputed with a GROUP BY over all members on every request. Switched off with
+ * {@code team.stats.enabled=false}, in which case every {@link #snapshot()} runs the GROUP BY.
+ * <p>
+ * The old state of an update comes with the post-commit event, so re-teaming a member with
+ * {@link Member#changeTeam(Team)} or changing its age moves it from one aggregate to the other.
+ * Ages are kept as a multiset per team so min and max stay exact when members leave. Members without a team
+ * are aggregated too, for {@link MemberSearchStatistics}, but not listed by {@link #snapshot()}.
+ * <p>
+ * After a bulk statement the aggregates are stale and the next read rebuilds them with one GROUP BY. The same
+ * query backs {@link #reconcile()}, which runs on a schedule to catch drift from writes nobody announced, such
+ * as {@code deleteAllInBatch}. Every applied write bumps a write count; a load during which it moved may or may
+ * not include those writes, so it is discarded and loaded again, see {@link #rebuild(boolean)}.
+ */
+@Slf4j
+@Component
+public class TeamStatistics extends MemberChangeListener {
+
+    // loads a rebuild attempts while writes keep arriving before it settles for the last one
+    private static final int MAX_LOADS = 3;
+
+    private final JPAQueryFactory queryFactory;
+    private final boolean enabled;
+
+    // one rebuild at a time; taken before the monitor of this, never while holding it
+    private final Object rebuildLock = new Object();
+
+    // guarded by this; the null key aggregates the members without a team
+    private Map<Long, TeamAggregate> teams = new HashMap<>();
+    // nothing has been read yet, the first snapshot loads everything
+    private boolean stale = true;
+    private long writes;
+    private long rebuilds;
+
+    public TeamStatistics(EntityManagerFactory emf, ObjectProvider<PrimaryReads> primaryReads,
+                          JPAQueryFactory queryFactory, @Value("${team.stats.enabled:true}") boolean enabled) {
+        super(emf, primaryReads);
+        this.queryFactory = queryFactory;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Aggregates of every team, ordered by team id. O(teams) unless a bulk statement made them stale.
+     */
+    public List<TeamStatsDto> snapshot() {
+        if (!enabled) {
+            return toDtos(load());
+        }
+        rebuildIfStale();
+        return copy();
+    }
+
+    /**
+     * Calls {@code visitor} with the id and the age multiset, age to members, of every team named
+     * {@code teamName}; of every team and then of the members without a team, under a null id, when
+     * {@code teamName} is null. The multisets are only valid inside the visitor.
+     */
+    public void forEachAges(String teamName, BiConsumer<Long, NavigableMap<Integer, Long>> visitor) {
+        if (!enabled) {
+            visit(load(), teamName, visitor);
+            return;
+        }
+        rebuildIfStale();
+        synchronized (this) {
+            visit(teams, teamName, visitor);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Compares the maintained aggregates with a fresh GROUP BY, logs the teams that differ and
+     * replaces the aggregates with the exact ones. Stale aggregates are replaced without comparing.
+     */
+    public Reconciliation reconcile() {
+        if (!enabled) {
+            long start = System.nanoTime();
+            return new Reconciliation(teamCount(load()), List.of(), System.nanoTime() - start);
+        }
+        synchronized (rebuildLock) {
+            return rebuild(true);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${team.stats.reconcile-interval:PT5M}",
+            fixedDelayString = "${team.stats.reconcile-interval:PT5M}")
+    public void scheduledReconcile() {
+        if (!enabled) {
+            return;
+        }
+        Reconciliation result = reconcile();
+        log.debug("team stats reconciled {}", result);
+    }
+
+    public synchronized long getRebuilds() {
+        return rebuilds;
+    }
+
+    @Override
+    protected boolean isListening() {
+        return enabled;
+    }
+
+    @Override
+    protected boolean follows(Class<?> entityType) {
+        return entityType == Member.class || entityType == Team.class;
+    }
+
+    @Override
+    protected synchronized void onBulkChange() {
+        stale = true;
+        writes++;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Member) {
+            MemberState member = MemberState.of(event.getPersister(), event.getState());
+            synchronized (this) {
+                add(member);
+                writes++;
+            }
+        }
+        else if (entity instanceof Team) {
+            putTeamName((Long) event.getId(), ((Team) entity).getName());
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Member) {
+            if (event.getOldState() == null) {
+                // updated without knowing what it was before, e.g. a detached member passed to Session#update
+                onBulkChange();
+                return;
+            }
+            MemberState before = MemberState.of(event.getPersister(), event.getOldState());
+            MemberState after = MemberState.of(event.getPersister(), event.getState());
+            synchronized (this) {
+                remove(before);
+                add(after);
+                writes++;
+            }
+        }
+        else if (entity instanceof Team) {
+            putTeamName((Long) event.getId(), ((Team) entity).getName());
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Member) {
+            MemberState member = MemberState.of(event.getPersister(), event.getDeletedState());
+            synchronized (this) {
+                remove(member);
+                writes++;
+            }
+        }
+        else if (entity instanceof Team) {
+            synchronized (this) {
+                teams.remove((Long) event.getId());
+                writes++;
+            }
+        }
+    }
+
+    private void rebuildIfStale() {
+        synchronized (this) {
+            if (!stale) {
+                return;
+            }
+        }
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                if (!stale) {
+                    return;
+                }
+            }
+            rebuild(false);
+        }
+    }
+
+    /**
+     * Loads the exact aggregates and swaps them in. A write applied while loading may or may not be in the
+     * result, so the result is discarded and loaded again; after {@link #MAX_LOADS} such loads the last one is
+     * kept but stays stale, and the next read loads again. Called holding {@link #rebuildLock}.
+     */
+    private Reconciliation rebuild(boolean compare) {
+        long start = System.nanoTime();
+        for (int loads = 1; ; loads++) {
+            long seen;
+            boolean wasStale;
+            List<TeamStatsDto> maintained;
+            synchronized (this) {
+                seen = writes;
+                wasStale = stale;
+                maintained = compare ? toDtos(teams) : null;
+            }
+
+            Map<Long, TeamAggregate> exact = load();
+
+            List<TeamStatsDto> expected;
+            synchronized (this) {
+                boolean settled = writes == seen;
+                if (!settled && loads < MAX_LOADS) {
+                    continue;
+                }
+                teams = exact;
+                stale = !settled;
+                rebuilds++;
+                if (!compare || wasStale || !settled) {
+                    return new Reconciliation(teamCount(exact), List.of(), System.nanoTime() - start);
+                }
+                expected = toDtos(exact);
+            }
+            return new Reconciliation(expected.size(), mismatched(expected, maintained), System.nanoTime() - start);
+        }
+    }
+
+    private static List<Long> mismatched(List<TeamStatsDto> expected, List<TeamStatsDto> maintained) {
+        List<Long> mismatched = new ArrayList<>();
+        Map<Long, TeamStatsDto> maintainedById = new HashMap<>();
+        maintained.forEach(stats -> maintainedById.put(stats.getTeamId(), stats));
+        for (TeamStatsDto stats : expected) {
+            TeamStatsDto kept = maintainedById.remove(stats.getTeamId());
+            if (!stats.equals(kept)) {
+                mismatched.add(stats.getTeamId());
+                log.warn("team stats drifted, expected {} but had {}", stats, kept);
+            }
+        }
+        for (TeamStatsDto removed : maintainedById.values()) {
+            mismatched.add(removed.getTeamId());
+            log.warn("team stats drifted, team {} no longer exists", removed);
+        }
+        return mismatched;
+    }
+
+    private synchronized void putTeamName(Long teamId, String name) {
+        teams.computeIfAbsent(teamId, id -> new TeamAggregate()).name = name;
+        writes++;
+    }
+
+    private void add(MemberState member) {
+        teams.computeIfAbsent(member.teamId, id -> new TeamAggregate()).add(member.age, 1);
+    }
+
+    private void remove(MemberState member) {
+        TeamAggregate team = teams.get(member.teamId);
+        if (team != null) {
+            team.remove(member.age);
+        }
+    }
+
+    private synchronized List<TeamStatsDto> copy() {
+        return toDtos(teams);
+    }
+
+    /**
+     * Every team, then one row per team and distinct age without joining team, which is enough to rebuild
+     * the age multisets including that of the members without a team.
+     */
+    private Map<Long, TeamAggregate> load() {
+        QTeam team = QTeam.team;
+        QMember member = QMember.member;
+
+        List<Tuple> teamRows = loadCommitted(() -> queryFactory
+                .select(team.id, team.name)
+                .from(team)
+                .fetch());
+        List<Tuple> ageRows = loadCommitted(() -> queryFactory
+                .select(member.team.id, member.age, member.count())
+                .from(member)
+                .groupBy(member.team.id, member.age)
+                .fetch());
+
+        Map<Long, TeamAggregate> exact = new HashMap<>();
+        for (Tuple row : teamRows) {
+            exact.computeIfAbsent(row.get(team.id), id -> new TeamAggregate()).name = row.get(team.name);
+        }
+        for (Tuple row : ageRows) {
+            exact.computeIfAbsent(row.get(member.team.id), id -> new TeamAggregate())
+                    .add(row.get(member.age), row.get(member.count()));
+        }
+        return exact;
+    }
+
+    private static void visit(Map<Long, TeamAggregate> teams, String teamName,
+                              BiConsumer<Long, NavigableMap<Integer, Long>> visitor) {
+        teams.forEach((id, aggregate) -> {
+            if (teamName == null ? id != null : teamName.equals(aggregate.name)) {
+                visitor.accept(id, aggregate.ages);
+            }
+        });
+        TeamAggregate noTeam = teams.get(null);
+        if (teamName == null && noTeam != null) {
+            visitor.accept(null, noTeam.ages);
+        }
+    }
+
+    private static int teamCount(Map<Long, TeamAggregate> teams) {
+        return teams.containsKey(null) ? teams.size() - 1 : teams.size();
+    }
+
+    private static List<TeamStatsDto> toDtos(Map<Long, TeamAggregate> teams) {
+        List<TeamStatsDto> result = new ArrayList<>(teams.size());
+        teams.forEach((id, aggregate) -> {
+            if (id != null) {
+                result.add(aggregate.toDto(id));
+            }
+        });
+        result.sort((a, b) -> Long.compare(a.getTeamId(), b.getTeamId()));
+        return result;
+    }
+
+    private static final class MemberState {
+
+        private final Long teamId;
+        private final int age;
+
+        private MemberState(Long teamId, int age) {
+            this.teamId = teamId;
+            this.age = age;
+        }
+
+        static MemberState of(EntityPersister persister, Object[] state) {
+            return new MemberState(teamId(persister, state), age(persister, state));
+        }
+    }
+
+    private static final class TeamAggregate {
+
+        private String name;
+        private long count;
+        private long sum;
+        private final TreeMap<Integer, Long> ages = new TreeMap<>();
+
+        void add(int age, long members) {
+            count += members;
+            sum += (long) age * members;
+            ages.merge(age, members, Long::sum);
+        }
+
+        void remove(int age) {
+            Long members = ages.get(age);
+            if (members == null) {
+                // not counted in the first place, the next reconciliation sorts it out
+                return;
+            }
+            if (members == 1) {
+                ages.remove(age);
+            }
+            else {
+                ages.put(age, members - 1);
+            }
+            count--;
+            sum -= age;
+        }
+
+        TeamStatsDto toDto(Long teamId) {
+            return new TeamStatsDto(teamId, name, count, sum,
+                    ages.isEmpty() ? null : ages.firstKey(),
+                    ages.isEmpty() ? null : ages.lastKey());
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class Reconciliation {
+
+        private final int teams;
+        private final List<Long> mismatchedTeamIds;
+        private final long elapsedMillis;
+
+        public Reconciliation(int teams, List<Long> mismatchedTeamIds, long elapsedNanos) {
+            this.teams = teams;
+            this.mismatchedTeamIds = mismatchedTeamIds;
+            this.elapsedMillis = elapsedNanos / 1_000_000;
+        }
+    }
+}
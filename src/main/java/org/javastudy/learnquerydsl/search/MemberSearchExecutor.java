@@ -0,0 +1,177 @@
+package org.javastudy.learnquerydsl.search;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.javastudy.learnquerydsl.repository.MemberJpaRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bulkhead for searches run off the servlet threads.
+ * <p>
+ * At most {@code maxConcurrent} searches run at a time, by default as many as the connection pool
+ * has connections, and at most {@code queueCapacity} more wait for one of them. Anything beyond that
+ * is rejected right away with {@link MemberSearchRejectedException} instead of piling up.
+ * <p>
+ * Searches run on virtual threads when the JDK has them, otherwise on a fixed pool of
+ * {@code maxConcurrent} platform threads. A {@link TaskDecorator} bean, if there is exactly one, wraps every
+ * search, e.g. to carry the routing state of the submitting request over.
+ */
+@Slf4j
+@Component
+public class MemberSearchExecutor {
+
+    private final MemberJpaRepository memberJpaRepository;
+    private final int maxConcurrent;
+    private final int queueCapacity;
+
+    // admitted = running + waiting, running never exceeds maxConcurrent
+    private final Semaphore admitted;
+    private final Semaphore running;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final TaskDecorator taskDecorator;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public MemberSearchExecutor(MemberJpaRepository memberJpaRepository, ObjectProvider<TaskDecorator> taskDecorator,
+                                @Value("${member.search.async.max-concurrent:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrent,
+                                @Value("${member.search.async.queue-capacity:20}") int queueCapacity) {
+        this.memberJpaRepository = memberJpaRepository;
+        this.maxConcurrent = maxConcurrent;
+        this.queueCapacity = queueCapacity;
+        this.admitted = new Semaphore(maxConcurrent + queueCapacity);
+        this.running = new Semaphore(maxConcurrent);
+        this.taskDecorator = taskDecorator.getIfUnique(() -> runnable -> runnable);
+
+        ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtualThreads ? virtual : newPlatformThreadPool(maxConcurrent);
+        log.info("async member search on {} threads, {} concurrent, {} queued",
+                virtualThreads ? "virtual" : "platform", maxConcurrent, queueCapacity);
+    }
+
+    public CompletableFuture<List<MemberTeamDto>> search(MemberSearchCondition condition) {
+        return submit(() -> memberJpaRepository.search(condition));
+    }
+
+    <T> CompletableFuture<T> submit(Supplier<T> task) {
+
+        if (!admitted.tryAcquire()) {
+            rejected.increment();
+            Stats stats = getStats();
+            throw new MemberSearchRejectedException(String.format(
+                    "member search is saturated: %d of %d running, %d of %d queued",
+                    stats.getActive(), maxConcurrent, stats.getQueued(), queueCapacity));
+        }
+
+        try {
+            return CompletableFuture.supplyAsync(() -> runLimited(task),
+                    command -> executor.execute(taskDecorator.decorate(command)));
+        }
+        catch (RuntimeException e) {
+            // executor shut down
+            admitted.release();
+            throw e;
+        }
+    }
+
+    private <T> T runLimited(Supplier<T> task) {
+        try {
+            running.acquireUninterruptibly();
+            try {
+                T result = task.get();
+                completed.increment();
+                return result;
+            }
+            catch (RuntimeException e) {
+                failed.increment();
+                throw e;
+            }
+            finally {
+                running.release();
+            }
+        }
+        finally {
+            admitted.release();
+        }
+    }
+
+    public Stats getStats() {
+        int inFlight = maxConcurrent + queueCapacity - admitted.availablePermits();
+        int active = maxConcurrent - running.availablePermits();
+        return new Stats(virtualThreads, maxConcurrent, queueCapacity, active, Math.max(inFlight - active, 0),
+                completed.sum(), failed.sum(), rejected.sum());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        // compiled for Java 11, so look the JDK 21 factory up at runtime
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadPool(int threads) {
+        AtomicInteger sequence = new AtomicInteger();
+        // the admission semaphore bounds the queue, it never holds more than queueCapacity tasks
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "member-search-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @Getter
+    public static class Stats {
+
+        private final boolean virtualThreads;
+        private final int maxConcurrent;
+        private final int queueCapacity;
+        private final int active;
+        private final int queued;
+        private final long completed;
+        private final long failed;
+        private final long rejected;
+
+        public Stats(boolean virtualThreads, int maxConcurrent, int queueCapacity, int active, int queued,
+                     long completed, long failed, long rejected) {
+            this.virtualThreads = virtualThreads;
+            this.maxConcurrent = maxConcurrent;
+            this.queueCapacity = queueCapacity;
+            this.active = active;
+            this.queued = queued;
+            this.completed = completed;
+            this.failed = failed;
+            this.rejected = rejected;
+        }
+    }
+}
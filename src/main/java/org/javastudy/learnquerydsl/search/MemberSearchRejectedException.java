@@ -0,0 +1,8 @@
+package org.javastudy.learnquerydsl.search;
+
+public class MemberSearchRejectedException extends RuntimeException {
+
+    public MemberSearchRejectedException(String message) {
+        super(message);
+    }
+}
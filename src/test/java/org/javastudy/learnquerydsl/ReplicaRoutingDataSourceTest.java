@@ -0,0 +1,167 @@
+package org.javastudy.learnquerydsl;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.servlet.http.Cookie;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A second in-memory H2 database stands in for the replica; H2's DATABASE() tells which one answered,
+ * the primary being the embedded database under its generated name.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.replica.url=jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1",
+        "spring.datasource.replica.username=sa",
+        "spring.datasource.replica.max-lag=500ms"
+})
+class ReplicaRoutingDataSourceTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    ReplicaLag replicaLag;
+
+    @Autowired
+    ReplicaRoutingFilter replicaRoutingFilter;
+
+    @Autowired
+    PrimaryReads primaryReads;
+
+    @Autowired
+    TaskDecorator replicaRoutingTaskDecorator;
+
+    @Test
+    public void readOnlyTransactionsUseReplica() throws Exception {
+        // let writes of other tests on this thread age past max-lag
+        Thread.sleep(500);
+
+        assertEquals("REPLICA", database(true));
+        assertNotEquals("REPLICA", database(false));
+    }
+
+    @Test
+    public void readsFollowWritesUntilMaxLag() throws Exception {
+        assertNotEquals("REPLICA", database(false));
+        assertNotEquals("REPLICA", database(true));
+
+        Thread.sleep(500);
+        assertEquals("REPLICA", database(true));
+    }
+
+    @Test
+    public void replicaMayMissWritesWithinMaxLag() throws Exception {
+        Thread.sleep(500);
+
+        long now = System.currentTimeMillis();
+        assertTrue(replicaLag.mayMiss(now));
+        assertFalse(replicaLag.mayMiss(now - 500));
+
+        // after a write of its own, reads go to the primary, which misses nothing
+        database(false);
+        assertFalse(replicaLag.mayMiss(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void requestWritesFollowTheClientNotTheThread() throws Exception {
+        Thread.sleep(500);
+
+        MockHttpServletResponse writeResponse = new MockHttpServletResponse();
+        replicaRoutingFilter.doFilter(new MockHttpServletRequest(), writeResponse, (request, response) -> {
+            assertNotEquals("REPLICA", database(false));
+            assertNotEquals("REPLICA", database(true));
+        });
+        Cookie lastWrite = writeResponse.getCookie(ReplicaRoutingDataSource.LAST_WRITE_COOKIE);
+        assertNotNull(lastWrite);
+
+        // the next request on this thread comes from another client
+        replicaRoutingFilter.doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(),
+                (request, response) -> assertEquals("REPLICA", database(true)));
+
+        MockHttpServletRequest sameClient = new MockHttpServletRequest();
+        sameClient.setCookies(lastWrite);
+        replicaRoutingFilter.doFilter(sameClient, new MockHttpServletResponse(),
+                (request, response) -> assertNotEquals("REPLICA", database(true)));
+
+        Thread.sleep(500);
+        replicaRoutingFilter.doFilter(sameClient, new MockHttpServletResponse(),
+                (request, response) -> assertEquals("REPLICA", database(true)));
+    }
+
+    @Test
+    public void tasksOnOtherThreadsFollowTheClientsWrite() throws Exception {
+        Thread.sleep(500);
+
+        MockHttpServletRequest writer = new MockHttpServletRequest();
+        writer.setCookies(new Cookie(ReplicaRoutingDataSource.LAST_WRITE_COOKIE,
+                Long.toString(System.currentTimeMillis())));
+        AtomicReference<String> database = new AtomicReference<>();
+        replicaRoutingFilter.doFilter(writer, new MockHttpServletResponse(), (request, response) ->
+                CompletableFuture.runAsync(replicaRoutingTaskDecorator.decorate(() -> database.set(database(true))))
+                        .join());
+        assertNotEquals("REPLICA", database.get());
+
+        replicaRoutingFilter.doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), (request, response) ->
+                CompletableFuture.runAsync(replicaRoutingTaskDecorator.decorate(() -> database.set(database(true))))
+                        .join());
+        assertEquals("REPLICA", database.get());
+    }
+
+    @Test
+    public void primaryReadsBypassTheReplica() throws Exception {
+        Thread.sleep(500);
+
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> {
+            assertNotEquals("REPLICA", primaryReads.call(() ->
+                    (String) em.createNativeQuery("select database()").getSingleResult()));
+            assertEquals("REPLICA", em.createNativeQuery("select database()").getSingleResult());
+        });
+
+        // reading from the primary is not a write, later reads still go to the replica
+        assertEquals("REPLICA", database(true));
+    }
+
+    @Test
+    public void writesReachPrimaryOnly() throws Exception {
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+        readWrite.executeWithoutResult(status ->
+                em.createNativeQuery("create table if not exists replica_check(id int)").executeUpdate());
+        assertEquals(1, countReplicaCheckTables(true));
+
+        // the replica is a separate database that never replicates, unlike a real one
+        Thread.sleep(500);
+        assertEquals(0, countReplicaCheckTables(true));
+        assertEquals(1, countReplicaCheckTables(false));
+    }
+
+    private long countReplicaCheckTables(boolean readOnly) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status -> ((Number) em.createNativeQuery(
+                "select count(*) from information_schema.tables where table_name = 'REPLICA_CHECK'")
+                .getSingleResult()).longValue());
+    }
+
+    private String database(boolean readOnly) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status ->
+                (String) em.createNativeQuery("select database()").getSingleResult());
+    }
+}
@@ -0,0 +1,184 @@
+package org.javastudy.learnquerydsl.controller;
+
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.QMember;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.javastudy.learnquerydsl.metrics.QueryMetricsRegistry;
+import org.javastudy.learnquerydsl.repository.MemberJpaRepository;
+import org.javastudy.learnquerydsl.repository.MemberRepository;
+import org.javastudy.learnquerydsl.repository.TeamRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.compression.enabled=true",
+        "server.compression.min-response-size=2KB",
+        "query.metrics.enabled=true"
+})
+class MemberControllerTest {
+
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    QueryMetricsRegistry queryMetrics;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    Long memberId;
+    Long team1Id;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team1 = teamRepository.save(new Team("team1"));
+            Team team2 = teamRepository.save(new Team("team2"));
+            for (int i = 0; i < 100; i++) {
+                Member member = memberRepository.save(new Member("member" + i, i, (i % 2 == 0) ? team1 : team2));
+                memberId = member.getId();
+            }
+            team1Id = team1.getId();
+        });
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteAllInBatch();
+        teamRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void notModifiedWithoutQuery() {
+        ResponseEntity<String> first = get("/members?teamName=team1", null);
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        String etag = first.getHeaders().getETag();
+        assertNotNull(etag);
+
+        long searches = searches();
+        ResponseEntity<String> poll = get("/members?teamName=team1", etag);
+        assertEquals(HttpStatus.NOT_MODIFIED, poll.getStatusCode());
+        assertNull(poll.getBody());
+        assertEquals(searches, searches());
+
+        // the same search spelled differently, and another one
+        assertEquals(etag, get("/members?teamName=team1&username=", null).getHeaders().getETag());
+        assertNotEquals(etag, get("/members?teamName=team2", null).getHeaders().getETag());
+    }
+
+    @Test
+    public void writesChangeTheEtag() {
+        String etag = get("/members", null).getHeaders().getETag();
+
+        memberJpaRepository.save(new Member("newMember", 1));
+        etag = assertModified(etag);
+
+        // the last member is in team2
+        transactionTemplate.executeWithoutResult(status ->
+                em.find(Member.class, memberId).changeTeam(em.find(Team.class, team1Id)));
+        etag = assertModified(etag);
+
+        QMember member = QMember.member;
+        memberJpaRepository.bulkUpdate(new MemberSearchCondition(), update -> update.set(member.age, member.age.add(1)));
+        etag = assertModified(etag);
+
+        memberJpaRepository.bulkDelete(new MemberSearchCondition());
+        assertModified(etag);
+    }
+
+    @Test
+    public void pagesThroughLinkHeaders() {
+        List<MemberTeamDto> members = new ArrayList<>();
+        String url = "/members?teamName=team1&size=20";
+        int pages = 0;
+        while (url != null) {
+            ResponseEntity<MemberTeamDto[]> response = restTemplate.getForEntity(url, MemberTeamDto[].class);
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            members.addAll(Arrays.asList(response.getBody()));
+            String link = response.getHeaders().getFirst(HttpHeaders.LINK);
+            url = (link == null) ? null : link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+            pages++;
+        }
+
+        assertEquals(3, pages);
+        assertEquals(50, members.size());
+        assertTrue(members.stream().allMatch(member -> "team1".equals(member.getTeamName())));
+
+        // without size, a page is capped
+        memberRepository.save(new Member("oneTooMany", 1));
+        ResponseEntity<MemberTeamDto[]> all = restTemplate.getForEntity("/members", MemberTeamDto[].class);
+        assertEquals(MemberJpaRepository.MAX_PAGE_SIZE, all.getBody().length);
+        assertNotNull(all.getHeaders().getFirst(HttpHeaders.LINK));
+    }
+
+    @Test
+    public void invalidCursorIsNotEchoed() {
+        ResponseEntity<String> response = restTemplate.getForEntity("/members?cursor=<script>", String.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertFalse(response.getBody().contains("script"));
+    }
+
+    @Test
+    public void largeResponsesAreCompressed() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        ResponseEntity<byte[]> response = restTemplate.exchange("/members", HttpMethod.GET,
+                new HttpEntity<>(headers), byte[].class);
+
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    private String assertModified(String etag) {
+        ResponseEntity<String> response = get("/members", etag);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotEquals(etag, response.getHeaders().getETag());
+        return response.getHeaders().getETag();
+    }
+
+    private ResponseEntity<String> get(String url, String ifNoneMatch) {
+        HttpHeaders headers = new HttpHeaders();
+        if (ifNoneMatch != null) {
+            headers.setIfNoneMatch(ifNoneMatch);
+        }
+        return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    }
+
+    private long searches() {
+        return queryMetrics.snapshot().stream()
+                .filter(shape -> shape.getShape().startsWith("MemberJpaRepository.searchByCursor"))
+                .mapToLong(QueryMetricsRegistry.QueryShapeStats::getCalls)
+                .sum();
+    }
+}
@@ -0,0 +1,44 @@
+package org.javastudy.learnquerydsl.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.javastudy.learnquerydsl.dto.MemberDto;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.javastudy.learnquerydsl.dto.TeamMembersDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class MemberJsonComponentTest {
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    // serializes by bean introspection
+    final ObjectMapper reflective = new ObjectMapper();
+
+    @Test
+    public void registeredWithBootObjectMapper() throws Exception {
+        assertEquals(MemberJsonComponent.MemberTeamDtoSerializer.class,
+                objectMapper.getSerializerProviderInstance().findValueSerializer(MemberTeamDto.class).getClass());
+        assertEquals(MemberJsonComponent.MemberDtoSerializer.class,
+                objectMapper.getSerializerProviderInstance().findValueSerializer(MemberDto.class).getClass());
+    }
+
+    @Test
+    public void sameJsonAsBeanSerialization() throws Exception {
+        List<MemberTeamDto> rows = List.of(
+                new MemberTeamDto(1L, "member1", 10, 2L, "teamA"),
+                new MemberTeamDto(Long.MAX_VALUE, "quote \" backslash \\ tab \t", -1, null, null),
+                new MemberTeamDto(3L, null, 0, 4L, "한글   emoji 😀"));
+        assertEquals(reflective.writeValueAsString(rows), objectMapper.writeValueAsString(rows));
+
+        TeamMembersDto team = new TeamMembersDto(7L, "teamA", 3,
+                List.of(new MemberDto("member1", 10), new MemberDto(null, 20)));
+        assertEquals(reflective.writeValueAsString(team), objectMapper.writeValueAsString(team));
+    }
+}
@@ -0,0 +1,96 @@
+package org.javastudy.learnquerydsl.metrics;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.QMember;
+import org.javastudy.learnquerydsl.entity.QTeam;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.javastudy.learnquerydsl.repository.MemberRepository;
+import org.javastudy.learnquerydsl.repository.TeamRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Transactional
+class QueryBudgetTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @BeforeEach
+    public void beforeEach() {
+        Team team1 = new Team("team1");
+        Team team2 = new Team("team2");
+        Team team3 = new Team("team3");
+        teamRepository.save(team1);
+        teamRepository.save(team2);
+        teamRepository.save(team3);
+
+        memberRepository.save(new Member("member1", 10, team1));
+        memberRepository.save(new Member("member2", 20, team2));
+        memberRepository.save(new Member("member3", 30, team3));
+
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void lazyLoadsOverBudgetFail() {
+        try (QueryBudget budget = QueryBudget.open("n+1", 100, 2, true)) {
+            List<Member> members = memberRepository.findAll();
+
+            members.get(0).getTeam().getName();
+            members.get(1).getTeam().getName();
+            QueryBudgetExceededException e = assertThrows(QueryBudgetExceededException.class,
+                    () -> members.get(2).getTeam().getName());
+
+            assertEquals(3, budget.getLazyLoads());
+            assertTrue(e.getMessage().contains(QueryBudgetTest.class.getName()));
+        }
+        assertFalse(QueryBudget.current().isPresent());
+    }
+
+    @Test
+    public void fetchJoinStaysWithinBudget() {
+        QMember member = QMember.member;
+        QTeam team = QTeam.team;
+
+        try (QueryBudget budget = QueryBudget.open("fetch join", 1, 0, true)) {
+            List<Member> members = queryFactory
+                    .selectFrom(member)
+                    .join(member.team, team).fetchJoin()
+                    .fetch();
+
+            members.forEach(m -> m.getTeam().getName());
+            assertEquals(0, budget.getLazyLoads());
+            assertEquals(1, budget.getStatements());
+        }
+    }
+
+    @Test
+    public void statementsOverBudgetAreReported() {
+        try (QueryBudget budget = QueryBudget.open("report only", 1, 100, false)) {
+            memberRepository.findAll().forEach(m -> m.getTeam().getName());
+
+            assertTrue(budget.isExceeded());
+            assertEquals(4, budget.getStatements());
+        }
+    }
+}
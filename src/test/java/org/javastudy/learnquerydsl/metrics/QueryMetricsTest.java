@@ -0,0 +1,86 @@
+package org.javastudy.learnquerydsl.metrics;
+
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.repository.MemberJpaRepository;
+import org.javastudy.learnquerydsl.repository.MemberRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "query.metrics.enabled=true")
+@Transactional
+class QueryMetricsTest {
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    QueryMetricsRegistry registry;
+
+    @BeforeEach
+    public void beforeEach() {
+        registry.reset();
+    }
+
+    @Test
+    public void recordsPerShape() {
+        memberRepository.save(new Member("member1", 10));
+        memberRepository.save(new Member("member2", 20));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(15);
+        memberJpaRepository.search(condition);
+        memberJpaRepository.search(condition);
+        memberRepository.findByUsername("member1");
+
+        Map<String, QueryMetricsRegistry.QueryShapeStats> stats = registry.snapshot().stream()
+                .collect(Collectors.toMap(QueryMetricsRegistry.QueryShapeStats::getShape, Function.identity()));
+
+        QueryMetricsRegistry.QueryShapeStats search = stats.get("MemberJpaRepository.search[ageGoe]");
+        assertEquals(2, search.getCalls());
+        assertEquals(2, search.getRows());
+        // the first search also flushes the two pending inserts
+        assertTrue(search.getStatements() >= 2);
+        assertTrue(search.getP99Micros() >= search.getP50Micros());
+
+        QueryMetricsRegistry.QueryShapeStats findByUsername = stats.get("MemberRepository.findByUsername");
+        assertEquals(1, findByUsername.getCalls());
+        assertEquals(1, findByUsername.getRows());
+        assertEquals(1, findByUsername.getStatements());
+    }
+
+    @Test
+    public void objectMethodsAreNotRecorded() {
+        memberRepository.toString();
+        memberRepository.hashCode();
+        memberJpaRepository.toString();
+        memberJpaRepository.equals(memberRepository);
+
+        assertTrue(registry.snapshot().isEmpty(), () -> registry.snapshot().toString());
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500, histogram.valueAt(0.50), 500 * 0.125);
+        assertEquals(990, histogram.valueAt(0.99), 990 * 0.125);
+        assertEquals(7, histogram.valueAt(0.007));
+    }
+}
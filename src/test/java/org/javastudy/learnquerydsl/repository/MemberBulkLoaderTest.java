@@ -0,0 +1,57 @@
+package org.javastudy.learnquerydsl.repository;
+
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "member.bulk-load.batch-size=100")
+@Transactional
+class MemberBulkLoaderTest {
+
+    @Autowired
+    MemberBulkLoader memberBulkLoader;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Test
+    public void load() {
+        MemberBulkLoader.BulkLoadResult result = memberBulkLoader.load(1050, 3);
+
+        assertEquals(1050, result.getMembers());
+        assertTrue(result.getRowsPerSecond() > 0);
+        assertEquals(1050, memberRepository.count());
+        assertEquals(3, teamRepository.count());
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("team0");
+        assertEquals(350, memberJpaRepository.searchCount(condition));
+    }
+
+    @Test
+    public void loadNamedTeams() {
+        memberBulkLoader.load(100, List.of("teamA", "teamB"));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+        condition.setAgeGoe(97);
+        assertEquals(List.of("member97", "member99"), memberJpaRepository.search(condition).stream()
+                .map(MemberTeamDto::getUsername)
+                .sorted()
+                .collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,123 @@
+package org.javastudy.learnquerydsl.repository;
+
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.QMember;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "member.bulk-update.chunk-size=3")
+class MemberBulkUpdateTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team1 = teamRepository.save(new Team("team1"));
+            Team team2 = teamRepository.save(new Team("team2"));
+            for (int i = 0; i < 10; i++) {
+                memberRepository.save(new Member("member" + i, i * 10, (i % 2 == 0) ? team1 : team2));
+            }
+        });
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteAllInBatch();
+        teamRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void bulkUpdateInChunks() {
+        QMember member = QMember.member;
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("team1");
+        condition.setAgeGoe(20);
+
+        List<MemberJpaRepository.BulkProgress> progress = new ArrayList<>();
+        MemberJpaRepository.BulkResult result = memberJpaRepository.bulkUpdate(condition,
+                update -> update.set(member.age, member.age.add(1)), progress::add);
+
+        // member2, member4, member6, member8 spread over ids member2..member8
+        assertEquals(4, result.getAffectedRows());
+        assertEquals(3, result.getChunks());
+        assertEquals(3, progress.size());
+        assertEquals(4, progress.get(2).getAffectedRows());
+        assertEquals(progress.get(2).getMaxId(), progress.get(2).getLastId());
+
+        MemberSearchCondition updated = new MemberSearchCondition();
+        updated.setTeamName("team1");
+        assertEquals(List.of(0, 21, 41, 61, 81), memberJpaRepository.search(updated).stream()
+                .map(row -> row.getAge())
+                .sorted()
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void bulkDeleteInChunks() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeLoe(45);
+
+        MemberJpaRepository.BulkResult result = memberJpaRepository.bulkDelete(condition);
+
+        assertEquals(5, result.getAffectedRows());
+        assertEquals(2, result.getChunks());
+        assertEquals(5, memberRepository.count());
+    }
+
+    @Test
+    public void managedMembersFollowTheBulkChange() {
+        QMember member = QMember.member;
+        Long id = memberRepository.findByUsername("member3").get(0).getId();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Member managed = em.find(Member.class, id);
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setUsername("member3");
+
+            memberJpaRepository.bulkUpdate(condition, update -> update.set(member.age, 99));
+            assertEquals(99, managed.getAge());
+
+            memberJpaRepository.bulkDelete(condition);
+            assertFalse(em.contains(managed));
+        });
+        assertTrue(memberRepository.findByUsername("member3").isEmpty());
+    }
+
+    @Test
+    public void nothingMatches() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("nobody");
+
+        MemberJpaRepository.BulkResult result = memberJpaRepository.bulkDelete(condition);
+
+        assertEquals(0, result.getAffectedRows());
+        assertEquals(0, result.getChunks());
+    }
+}
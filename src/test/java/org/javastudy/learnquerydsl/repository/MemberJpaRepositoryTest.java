@@ -1,17 +1,29 @@
 package org.javastudy.learnquerydsl.repository;
 
+import org.javastudy.learnquerydsl.dto.InvalidCursorException;
+import org.javastudy.learnquerydsl.dto.MemberCursorPage;
 import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberSearchCursor;
+import org.javastudy.learnquerydsl.dto.MemberSortKey;
 import org.javastudy.learnquerydsl.dto.MemberTeamDto;
 import org.javastudy.learnquerydsl.entity.Member;
 import org.javastudy.learnquerydsl.entity.Team;
+import org.javastudy.learnquerydsl.metrics.QueryBudget;
+import org.hibernate.Session;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -31,6 +43,9 @@ class MemberJpaRepositoryTest {
     @Autowired
     TeamRepository teamRepository;
 
+    @Autowired
+    MemberSearchQueryCache searchQueryCache;
+
     @Test
     public void basicTest() {
         Member member = new Member("member1", 10);
@@ -128,4 +143,232 @@ class MemberJpaRepositoryTest {
 
         assertEquals(result.get(0).getUsername(), "member4");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void searchByCursor() {
+        Team team1 = new Team("team1");
+        teamRepository.save(team1);
+
+        int[] ages = { 30, 10, 30, 20, 10 };
+        for (int i = 0; i < ages.length; i++) {
+            Member member = new Member("member" + i, ages[i]);
+            memberRepository.save(member);
+            member.changeTeam(team1);
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("team1");
+
+        List<Integer> collectedAges = new ArrayList<>();
+        List<Long> collectedIds = new ArrayList<>();
+        MemberSearchCursor after = null;
+        int pages = 0;
+        do {
+            MemberCursorPage page = memberJpaRepository.searchByCursor(condition, after, MemberSortKey.AGE, 2);
+            page.getContent().forEach(dto -> {
+                collectedAges.add(dto.getAge());
+                collectedIds.add(dto.getMemberId());
+            });
+            after = page.isHasNext() ? MemberSearchCursor.decode(page.getNextCursor()) : null;
+            pages++;
+        } while (after != null);
+
+        assertEquals(3, pages);
+        assertEquals(List.of(10, 10, 20, 30, 30), collectedAges);
+        assertEquals(5, collectedIds.stream().distinct().count());
+
+        MemberCursorPage byId = memberJpaRepository.searchByCursor(condition, null, MemberSortKey.ID, 10);
+        assertEquals(5, byId.getContent().size());
+        assertFalse(byId.isHasNext());
+    }
+
+    @Test
+    public void invalidCursor() {
+        assertThrows(InvalidCursorException.class, () -> MemberSearchCursor.decode("not-a-cursor"));
+    }
+
+    @Test
+    public void searchPage() {
+        Team team1 = new Team("team1");
+        Team team2 = new Team("team2");
+        teamRepository.save(team1);
+        teamRepository.save(team2);
+
+        for (int i = 0; i < 5; i++) {
+            Member member = new Member("member" + i, 10 * (i + 1));
+            memberRepository.save(member);
+            member.changeTeam(i < 3 ? team1 : team2);
+        }
+        memberRepository.save(new Member("no-team", 60));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        Page<MemberTeamDto> first = memberJpaRepository.searchPage(condition, PageRequest.of(0, 4));
+        assertEquals(4, first.getContent().size());
+        assertEquals(6, first.getTotalElements());
+        assertEquals(2, first.getTotalPages());
+
+        Page<MemberTeamDto> last = memberJpaRepository.searchPage(condition, PageRequest.of(1, 4));
+        assertEquals(2, last.getContent().size());
+        assertEquals(6, last.getTotalElements());
+
+        condition.setTeamName("team1");
+        Page<MemberTeamDto> team1Page = memberJpaRepository.searchPage(condition, PageRequest.of(0, 2));
+        assertEquals(2, team1Page.getContent().size());
+        assertEquals(3, team1Page.getTotalElements());
+        assertEquals(3, memberJpaRepository.searchCount(condition));
+    }
+
+    @Test
+    public void streamSearch() {
+        Team team1 = new Team("team1");
+        teamRepository.save(team1);
+
+        for (int i = 0; i < 10; i++) {
+            Member member = new Member("member" + i, i);
+            memberRepository.save(member);
+            member.changeTeam(team1);
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("team1");
+        condition.setAgeGoe(5);
+
+        List<MemberTeamDto> streamed = new ArrayList<>();
+        long count = memberJpaRepository.streamSearch(condition, 2, streamed::add);
+
+        assertEquals(5, count);
+        assertEquals(5, streamed.size());
+        assertEquals("member5", streamed.get(0).getUsername());
+        assertEquals("team1", streamed.get(0).getTeamName());
+    }
+
+    @Test
+    public void searchQueryShapeCache() {
+        Team team1 = new Team("team1");
+        teamRepository.save(team1);
+        Member member1 = new Member("member1", 10);
+        memberRepository.save(member1);
+        member1.changeTeam(team1);
+        memberRepository.save(new Member("member2", 20));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("member1");
+        condition.setAgeLoe(15);
+        memberJpaRepository.search(condition);
+
+        MemberSearchQueryCache.Stats before = searchQueryCache.getStats();
+
+        condition.setUsername("member2");
+        condition.setAgeLoe(25);
+        List<MemberTeamDto> result = memberJpaRepository.search(condition);
+
+        MemberSearchQueryCache.Stats after = searchQueryCache.getStats();
+        assertEquals(before.getHits() + 1, after.getHits());
+        assertEquals(before.getMisses(), after.getMisses());
+
+        assertEquals(1, result.size());
+        assertEquals("member2", result.get(0).getUsername());
+        assertNull(result.get(0).getTeamName());
+
+        MemberSearchCondition byTeam = new MemberSearchCondition();
+        byTeam.setTeamName("team1");
+        byTeam.setAgeGoe(5);
+        result = memberJpaRepository.search(byTeam);
+        assertEquals(1, result.size());
+        assertEquals("team1", result.get(0).getTeamName());
+    }
+
+    @Test
+    public void fetchPlans() {
+        Team team1 = new Team("team1");
+        teamRepository.save(team1);
+        Member member1 = new Member("member1", 10);
+        memberRepository.save(member1);
+        member1.changeTeam(team1);
+        memberRepository.save(new Member("member2", 20));
+        em.flush();
+        em.clear();
+
+        try (QueryBudget budget = QueryBudget.open("fetchPlans", 10, 10, false)) {
+            Member member = memberJpaRepository.findById(member1.getId(), MemberFetchPlan.MEMBER_WITH_TEAM).get();
+            assertEquals("team1", member.getTeam().getName());
+            assertEquals(1, budget.getStatements());
+            assertEquals(0, budget.getLazyLoads());
+        }
+        em.clear();
+
+        List<Member> all = memberJpaRepository.findAll(MemberFetchPlan.MEMBER_WITH_TEAM);
+        assertEquals(2, all.size());
+        all.forEach(member -> assertTrue(em.getEntityManagerFactory().getPersistenceUnitUtil().isLoaded(member, "team")));
+        em.clear();
+
+        Member memberOnly = memberJpaRepository.findByUsername("member1", MemberFetchPlan.MEMBER_ONLY).get(0);
+        assertFalse(em.getEntityManagerFactory().getPersistenceUnitUtil().isLoaded(memberOnly.getTeam()));
+    }
+
+    @Test
+    public void readMethodsLoadReadOnlyEntities() {
+        memberRepository.save(new Member("member1", 10));
+        em.flush();
+        em.clear();
+
+        Session session = em.unwrap(Session.class);
+        Member member = memberJpaRepository.findByUsername_Querydsl("member1").get(0);
+        assertTrue(session.isReadOnly(member));
+        assertTrue(memberJpaRepository.findAll().stream().allMatch(session::isReadOnly));
+
+        // not dirty-checked, so the change is never written
+        member.setUsername("changed");
+        em.flush();
+        em.clear();
+        assertEquals(1, memberJpaRepository.findByUsername("member1").size());
+        em.clear();
+
+        // findById stays the way to load a member for modification, whatever the fetch plan
+        Member writable = memberJpaRepository.findById(member.getId()).get();
+        assertFalse(session.isReadOnly(writable));
+        em.clear();
+        for (MemberFetchPlan plan : MemberFetchPlan.values()) {
+            assertFalse(session.isReadOnly(memberJpaRepository.findById(member.getId(), plan).get()));
+            em.clear();
+        }
+    }
+
+    @Test
+    public void findAllByIds() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Member member = new Member("member" + i, i);
+            memberRepository.save(member);
+            ids.add(member.getId());
+        }
+        em.flush();
+        em.clear();
+
+        Member loaded1 = em.find(Member.class, ids.get(1));
+        Member loaded2 = em.find(Member.class, ids.get(2));
+
+        List<Long> request = new ArrayList<>(ids);
+        Collections.reverse(request);
+        request.add(ids.get(5));
+        request.add(-1L);
+
+        try (QueryBudget budget = QueryBudget.open("findAllByIds", 10, 10, false)) {
+            List<Member> members = memberJpaRepository.findAllByIds(request);
+
+            // the 38 ids not in the persistence context go out as one IN list padded to 128
+            assertEquals(1, budget.getStatements());
+            assertEquals(40, members.size());
+            assertEquals("member39", members.get(0).getUsername());
+            assertEquals("member0", members.get(39).getUsername());
+            assertSame(loaded1, members.get(38));
+            assertSame(loaded2, members.get(37));
+            assertTrue(members.stream().noneMatch(em.unwrap(Session.class)::isReadOnly));
+        }
+
+        assertEquals(List.of(List.of(7L, 8L, 8L, 8L, 8L, 8L, 8L, 8L)), InListPadding.batches(List.of(7L, 8L, 7L)));
+        assertEquals(List.of(512, 128), InListPadding.batches(new ArrayList<>(LongStream.range(0, 600).boxed()
+                .collect(Collectors.toList()))).stream().map(List::size).collect(Collectors.toList()));
+    }
+}
@@ -2,12 +2,15 @@ package org.javastudy.learnquerydsl.repository;
 
 import org.javastudy.learnquerydsl.entity.Member;
 import org.javastudy.learnquerydsl.entity.Team;
+import org.javastudy.learnquerydsl.metrics.QueryBudget;
+import org.hibernate.Session;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
 import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -60,4 +63,53 @@ class MemberRepositoryTest {
             System.out.println("Team Name = " + member.getTeam().getName());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void fetchPlans() {
+        Team team1 = new Team("team1");
+        teamRepository.save(team1);
+        Member member1 = new Member("member1", 10, team1);
+        Member member2 = new Member("member2", 20, team1);
+        memberRepository.save(member1);
+        memberRepository.save(member2);
+        em.flush();
+        em.clear();
+
+        PersistenceUnitUtil util = em.getEntityManagerFactory().getPersistenceUnitUtil();
+
+        try (QueryBudget budget = QueryBudget.open("fetchPlans", 10, 10, false)) {
+            List<Member> members = memberRepository.findAll(MemberFetchPlan.MEMBER_WITH_TEAM);
+            members.forEach(member -> assertEquals("team1", member.getTeam().getName()));
+            assertEquals(2, members.size());
+            assertEquals(1, budget.getStatements());
+            assertEquals(0, budget.getLazyLoads());
+        }
+        em.clear();
+
+        Member withTeam = memberRepository.findById(member1.getId(), MemberFetchPlan.MEMBER_WITH_TEAM).get();
+        assertTrue(util.isLoaded(withTeam.getTeam()));
+        assertFalse(em.unwrap(Session.class).isReadOnly(withTeam));
+        em.clear();
+
+        assertTrue(util.isLoaded(memberRepository.findByUsername("member2", MemberFetchPlan.MEMBER_WITH_TEAM).get(0).getTeam()));
+        em.clear();
+
+        Member readOnly = memberRepository.findByUsername("member2", MemberFetchPlan.MEMBER_ONLY).get(0);
+        assertFalse(util.isLoaded(readOnly.getTeam()));
+        assertTrue(em.unwrap(Session.class).isReadOnly(readOnly));
+    }
+
+    @Test
+    public void findAllByIds() {
+        Member member1 = memberRepository.save(new Member("member1", 10));
+        Member member2 = memberRepository.save(new Member("member2", 20));
+        memberRepository.save(new Member("member3", 30));
+
+        List<Member> members = memberRepository.findAllByIds(List.of(member2.getId(), member1.getId(), member2.getId()));
+
+        // in the order of the ids, and the managed instances themselves
+        assertEquals(2, members.size());
+        assertSame(member2, members.get(0));
+        assertSame(member1, members.get(1));
+    }
+}
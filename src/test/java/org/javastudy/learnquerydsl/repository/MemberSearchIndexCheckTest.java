@@ -0,0 +1,54 @@
+package org.javastudy.learnquerydsl.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class MemberSearchIndexCheckTest {
+
+    @Autowired
+    MemberSearchIndexCheck indexCheck;
+
+    @Test
+    public void everyFilteredShapeUsesAnIndex() throws Exception {
+        List<MemberSearchIndexCheck.ShapePlan> plans = indexCheck.check();
+
+        // candidate ids without a usernameContains cannot happen, and only search binds candidate ids
+        List<MemberSearchIndexCheck.ShapePlan> searches = plans.stream()
+                .filter(plan -> plan.getQuery().equals("search"))
+                .collect(Collectors.toList());
+        assertEquals(96, searches.size());
+        assertEquals(96 + 64 * 6, plans.size());
+        assertEquals("[]", searches.get(0).getName());
+        assertEquals(List.of("MEMBER"), searches.get(0).getScannedTables());
+
+        for (MemberSearchIndexCheck.ShapePlan plan : plans) {
+            String name = plan.getQuery() + plan.getName();
+            if (MemberSearchQueryCache.readsEveryMember(plan.getShape())) {
+                // a keyset seek may still start from the primary key, so only search is known to scan
+                assertTrue(plan.getShape() == 0 || plan.getName().equals("[usernameContains]"), name);
+                if (plan.getQuery().equals("search")) {
+                    assertEquals(List.of("MEMBER"), plan.getScannedTables(), name);
+                }
+            }
+            else {
+                assertFalse(plan.isTableScan(), () -> name + " scans " + plan.getScannedTables() + "\n" + plan.getPlan());
+            }
+        }
+    }
+
+    @Test
+    public void teamNameFilterJoinsTeamFirst() throws Exception {
+        for (MemberSearchIndexCheck.ShapePlan plan : indexCheck.check()) {
+            if (plan.getName().equals("[teamName]")) {
+                assertTrue(plan.getPlan().contains("IDX_TEAM_NAME"), () -> plan.getQuery() + "\n" + plan.getPlan());
+            }
+        }
+    }
+}
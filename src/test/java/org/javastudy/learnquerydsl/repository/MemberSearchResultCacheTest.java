@@ -0,0 +1,94 @@
+package org.javastudy.learnquerydsl.repository;
+
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "member.search.result-cache.enabled=true")
+class MemberSearchResultCacheTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    MemberSearchResultCache resultCache;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteAllInBatch();
+        teamRepository.deleteAllInBatch();
+        resultCache.invalidateAll();
+    }
+
+    @Test
+    public void cachedUntilWrite() {
+        Long memberId = transactionTemplate.execute(status -> {
+            Team team1 = new Team("team1");
+            teamRepository.save(team1);
+            teamRepository.save(new Team("team2"));
+            Member member1 = new Member("member1", 10);
+            memberRepository.save(member1);
+            member1.changeTeam(team1);
+            return member1.getId();
+        });
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("team1");
+
+        MemberSearchResultCache.Stats before = resultCache.getStats();
+        List<MemberTeamDto> first = memberJpaRepository.search(condition);
+        List<MemberTeamDto> second = memberJpaRepository.search(condition);
+
+        MemberSearchResultCache.Stats after = resultCache.getStats();
+        assertEquals(1, first.size());
+        assertSame(first, second);
+        assertEquals(before.getMisses() + 1, after.getMisses());
+        assertEquals(before.getHits() + 1, after.getHits());
+        assertTrue(after.getEstimatedBytes() > 0);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Member member1 = em.find(Member.class, memberId);
+            member1.changeTeam(teamRepository.findAll().stream()
+                    .filter(team -> team.getName().equals("team2"))
+                    .findFirst()
+                    .get());
+        });
+
+        assertTrue(memberJpaRepository.search(condition).isEmpty());
+    }
+
+    @Test
+    public void bypassedInsideReadWriteTransaction() {
+        transactionTemplate.executeWithoutResult(status -> {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setUsername("member1");
+            assertTrue(memberJpaRepository.search(condition).isEmpty());
+
+            memberRepository.save(new Member("member1", 10));
+            assertEquals(1, memberJpaRepository.search(condition).size());
+        });
+    }
+}
@@ -0,0 +1,213 @@
+package org.javastudy.learnquerydsl.repository;
+
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.QMember;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "member.search.engine=snapshot")
+class MemberSearchSnapshotTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    MemberSearchQueryCache searchQueryCache;
+
+    @Autowired
+    MemberSearchSnapshot searchSnapshot;
+
+    @Autowired
+    MemberBulkLoader memberBulkLoader;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    Long team1Id;
+    Long team2Id;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team1 = teamRepository.save(new Team("team1"));
+            Team team2 = teamRepository.save(new Team("team2"));
+            // a second team with the same name
+            Team team2b = teamRepository.save(new Team("team2"));
+            Team[] teams = { team1, team2, team2b, null };
+            for (int i = 0; i < 200; i++) {
+                memberRepository.save(new Member("member" + (i % 150), i % 50, teams[i % teams.length]));
+            }
+            team1Id = team1.getId();
+            team2Id = team2.getId();
+        });
+        // other tests clear the tables with deleteAllInBatch, which the snapshot never hears about
+        searchSnapshot.reload();
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteAllInBatch();
+        teamRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void sameResultsAsJpa() {
+        for (String username : new String[] { null, "", "member7", "member140", "nobody" }) {
+            for (String teamName : new String[] { null, "team1", "team2", "nothing" }) {
+                for (Integer ageGoe : new Integer[] { null, 10, 49 }) {
+                    for (Integer ageLoe : new Integer[] { null, 10, 30 }) {
+                        MemberSearchCondition condition = new MemberSearchCondition();
+                        condition.setUsername(username);
+                        condition.setTeamName(teamName);
+                        condition.setAgeGoe(ageGoe);
+                        condition.setAgeLoe(ageLoe);
+
+                        assertEquals(sorted(searchQueryCache.search(condition)), searchSnapshot.search(condition),
+                                condition::toString);
+                    }
+                }
+            }
+        }
+        assertTrue(searchSnapshot.getStats().getSearches() > 0);
+    }
+
+    @Test
+    public void sameUsernameMatchesAsJpa() {
+        for (String prefix : new String[] { null, "member1", "nobody" }) {
+            for (String fragment : new String[] { null, "ber4", "4", "nobody" }) {
+                MemberSearchCondition condition = new MemberSearchCondition();
+                condition.setUsernameStartsWith(prefix);
+                condition.setUsernameContains(fragment);
+                condition.setTeamName("team2");
+
+                assertEquals(sorted(searchQueryCache.search(condition)), searchSnapshot.search(condition),
+                        condition::toString);
+            }
+        }
+    }
+
+    @Test
+    public void servesRepositorySearch() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("team2");
+
+        long searches = searchSnapshot.getStats().getSearches();
+        List<MemberTeamDto> result = memberJpaRepository.search(condition);
+
+        assertEquals(100, result.size());
+        assertEquals(searches + 1, searchSnapshot.getStats().getSearches());
+    }
+
+    @Test
+    public void followsCommittedWrites() {
+        long loads = searchSnapshot.getStats().getLoads();
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("newMember");
+
+        Long memberId = transactionTemplate.execute(status -> {
+            Member member = new Member("newMember", 77, em.find(Team.class, team1Id));
+            em.persist(member);
+            return member.getId();
+        });
+        assertEquals(List.of(new MemberTeamDto(memberId, "newMember", 77, team1Id, "team1")),
+                memberJpaRepository.search(condition));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Member member = em.find(Member.class, memberId);
+            member.setAge(78);
+            member.changeTeam(em.find(Team.class, team2Id));
+        });
+        assertEquals(List.of(new MemberTeamDto(memberId, "newMember", 78, team2Id, "team2")),
+                memberJpaRepository.search(condition));
+
+        transactionTemplate.executeWithoutResult(status -> em.remove(em.find(Member.class, memberId)));
+        assertTrue(memberJpaRepository.search(condition).isEmpty());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("newMember", 1));
+            status.setRollbackOnly();
+        });
+        assertTrue(memberJpaRepository.search(condition).isEmpty());
+
+        assertEquals(loads, searchSnapshot.getStats().getLoads());
+    }
+
+    @Test
+    public void readWriteTransactionUsesJpa() {
+        long searches = searchSnapshot.getStats().getSearches();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("uncommitted", 5));
+
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setUsername("uncommitted");
+            assertEquals(1, memberJpaRepository.search(condition).size());
+        });
+
+        assertEquals(searches, searchSnapshot.getStats().getSearches());
+    }
+
+    @Test
+    public void bulkUpdateReloads() {
+        QMember member = QMember.member;
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("team1");
+        long loads = searchSnapshot.getStats().getLoads();
+
+        memberJpaRepository.bulkUpdate(condition, update -> update.set(member.age, member.age.add(100)));
+
+        MemberSearchCondition updated = new MemberSearchCondition();
+        updated.setAgeGoe(100);
+        assertEquals(50, memberJpaRepository.search(updated).size());
+        assertEquals(loads + 1, searchSnapshot.getStats().getLoads());
+    }
+
+    @Test
+    public void compactsDeletedRows() {
+        memberBulkLoader.load(1200, 2);
+        searchSnapshot.reload();
+        long compactions = searchSnapshot.getStats().getCompactions();
+
+        transactionTemplate.executeWithoutResult(status ->
+                em.createQuery("select m from Member m where m.username like 'member%' order by m.id", Member.class)
+                        .setMaxResults(900)
+                        .getResultList()
+                        .forEach(em::remove));
+
+        MemberSearchSnapshot.Stats stats = searchSnapshot.getStats();
+        assertEquals(compactions + 1, stats.getCompactions());
+        assertEquals(500, stats.getLiveRows());
+        assertEquals(sorted(searchQueryCache.search(new MemberSearchCondition())),
+                searchSnapshot.search(new MemberSearchCondition()));
+    }
+
+    private static List<MemberTeamDto> sorted(List<MemberTeamDto> rows) {
+        return rows.stream()
+                .sorted(Comparator.comparing(MemberTeamDto::getMemberId))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+}
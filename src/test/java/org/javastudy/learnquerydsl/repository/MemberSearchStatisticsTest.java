@@ -0,0 +1,174 @@
+package org.javastudy.learnquerydsl.repository;
+
+import org.javastudy.learnquerydsl.dto.MemberCountEstimate;
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.QMember;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "member.search.stats.age-bucket-width=10",
+        "member.search.approximate-count.exact-below=100",
+        "member.bulk-update.chunk-size=500"
+})
+class MemberSearchStatisticsTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    MemberSearchStatistics searchStatistics;
+
+    @Autowired
+    TeamStatistics teamStatistics;
+
+    @Autowired
+    MemberBulkLoader memberBulkLoader;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void before() {
+        // 2000 members, ages 0..99, round-robin over team0..team3, so team1 has the ages 1, 5, .. 97
+        memberBulkLoader.load(2000, 4);
+        // other tests clear the tables with deleteAllInBatch, which the statistics never hear about
+        teamStatistics.reconcile();
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteAllInBatch();
+        teamRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void boundsContainExactCount() {
+        Integer[][] ageRanges = { { null, null }, { 15, 44 }, { 10, 29 }, { null, 3 }, { 97, null }, { 40, 30 } };
+        for (String teamName : new String[] { null, "team1", "nothing" }) {
+            for (Integer[] ages : ageRanges) {
+                MemberSearchCondition condition = condition(teamName, ages[0], ages[1]);
+
+                long exact = memberJpaRepository.searchCount(condition);
+                MemberCountEstimate estimate = searchStatistics.estimate(condition);
+
+                assertTrue(estimate.getLowerBound() <= exact && exact <= estimate.getUpperBound(),
+                        () -> condition + " " + estimate + " exact " + exact);
+                assertTrue(Math.abs(estimate.getCount() - exact) <= estimate.getErrorBound());
+            }
+        }
+
+        // ranges on bucket boundaries are estimated exactly
+        MemberCountEstimate aligned = searchStatistics.estimate(condition("team1", 10, 29));
+        assertEquals(100, aligned.getLowerBound());
+        assertEquals(100, aligned.getUpperBound());
+        assertEquals(0, aligned.getErrorBound());
+    }
+
+    @Test
+    public void approximateAboveThreshold() {
+        MemberCountEstimate broad = memberJpaRepository.searchCountEstimate(condition("team1", 15, 44));
+        assertFalse(broad.isExact());
+        assertEquals(150, broad.getCount());
+        assertEquals(100, broad.getLowerBound());
+        assertEquals(200, broad.getUpperBound());
+
+        // may be below exact-below
+        MemberCountEstimate narrow = memberJpaRepository.searchCountEstimate(condition("team1", 33, 35));
+        assertTrue(narrow.isExact());
+        assertEquals(20, narrow.getCount());
+
+        // usernames are not in the histograms
+        MemberSearchCondition byUsername = condition(null, null, null);
+        byUsername.setUsername("member7");
+        MemberCountEstimate username = memberJpaRepository.searchCountEstimate(byUsername);
+        assertTrue(username.isExact());
+        assertEquals(1, username.getCount());
+    }
+
+    @Test
+    public void followsCommittedWrites() {
+        MemberSearchCondition condition = condition("team0", 0, 9);
+        long before = searchStatistics.estimate(condition).getUpperBound();
+        long rebuilds = searchStatistics.getStats().getRebuilds();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team0 = teamRepository.findByName("team0").get();
+            for (int i = 0; i < 10; i++) {
+                em.persist(new Member("new" + i, 5, team0));
+            }
+            status.setRollbackOnly();
+        });
+        assertEquals(before, searchStatistics.estimate(condition).getUpperBound());
+
+        Long memberId = transactionTemplate.execute(status -> {
+            Team team0 = teamRepository.findByName("team0").get();
+            Member member = new Member("new", 5, team0);
+            em.persist(member);
+            return member.getId();
+        });
+        assertEquals(before + 1, searchStatistics.estimate(condition).getUpperBound());
+
+        // moves to the 50..59 bucket
+        transactionTemplate.executeWithoutResult(status -> em.find(Member.class, memberId).setAge(55));
+        assertEquals(before, searchStatistics.estimate(condition).getUpperBound());
+
+        assertEquals(rebuilds, searchStatistics.getStats().getRebuilds());
+    }
+
+    @Test
+    public void estimatePicksBulkStrategy() {
+        // at most 40 members of team1 in the 30..39 bucket, at least 2000 members in all
+        assertEquals(Boolean.TRUE, memberJpaRepository.fitsOneChunk(condition("team1", 30, 34)));
+        assertEquals(Boolean.FALSE, memberJpaRepository.fitsOneChunk(condition(null, 0, null)));
+
+        // 400..600 members aged 25..49, on both sides of the chunk size, so they are counted
+        assertNull(memberJpaRepository.fitsOneChunk(condition(null, 25, 49)));
+        MemberSearchCondition username = condition(null, 0, null);
+        username.setUsernameStartsWith("member");
+        assertNull(memberJpaRepository.fitsOneChunk(username));
+    }
+
+    @Test
+    public void fewMatchesTakeOneBulkStatement() {
+        QMember member = QMember.member;
+
+        // the 20 members aged 33 spread over all 2000 ids
+        MemberJpaRepository.BulkResult few = memberJpaRepository.bulkUpdate(condition("team1", 30, 34),
+                update -> update.set(member.age, member.age.add(1)));
+        assertEquals(20, few.getAffectedRows());
+        assertEquals(1, few.getChunks());
+
+        MemberJpaRepository.BulkResult many = memberJpaRepository.bulkUpdate(condition(null, 0, null),
+                update -> update.set(member.age, member.age.add(1)));
+        assertEquals(2000, many.getAffectedRows());
+        assertEquals(4, many.getChunks());
+    }
+
+    private static MemberSearchCondition condition(String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
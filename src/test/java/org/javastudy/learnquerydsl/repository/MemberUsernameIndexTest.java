@@ -0,0 +1,241 @@
+package org.javastudy.learnquerydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.QMember;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class MemberUsernameIndexTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    MemberUsernameIndex usernameIndex;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team1 = teamRepository.save(new Team("team1"));
+            Team team2 = teamRepository.save(new Team("team2"));
+            for (int i = 0; i < 300; i++) {
+                memberRepository.save(new Member("member" + i, i % 60, (i % 2 == 0) ? team1 : team2));
+            }
+            memberRepository.save(new Member("100%_off", 1));
+            memberRepository.save(new Member("1000 off", 2));
+            memberRepository.save(new Member("한글회원", 3));
+            memberRepository.save(new Member(null, 4));
+        });
+        // other tests clear the tables with deleteAllInBatch, which the index never hears about
+        usernameIndex.rebuild();
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteAllInBatch();
+        teamRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void sameResultsAsLike() {
+        for (String fragment : new String[] { "ember1", "ber29", "mem", "er", "r", "0%_", "%", "_", "00 o", "글회",
+                "nobody", "member299" }) {
+            for (String teamName : new String[] { null, "team1" }) {
+                MemberSearchCondition condition = new MemberSearchCondition();
+                condition.setUsernameContains(fragment);
+                condition.setTeamName(teamName);
+
+                List<Long> expected = like(fragment, null, teamName);
+                assertEquals(expected, ids(memberJpaRepository.search(condition)), condition::toString);
+                assertEquals(expected, ids(memberJpaRepository.searchByBuilder(condition)), condition::toString);
+                assertEquals(expected, ids(memberJpaRepository.searchPage(condition, PageRequest.of(0, 1000))
+                        .getContent()), condition::toString);
+                assertEquals(expected.size(), memberJpaRepository.searchCount(condition), condition::toString);
+            }
+        }
+    }
+
+    @Test
+    public void prefixIsARange() {
+        for (String prefix : new String[] { "member1", "member29", "m", "100%", "1000", "한", "\uffff", "nobody" }) {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setUsernameStartsWith(prefix);
+            condition.setUsernameContains("0");
+
+            List<Long> expected = like("0", prefix, null);
+            assertEquals(expected, ids(memberJpaRepository.search(condition)), condition::toString);
+            assertEquals(expected.size(), memberJpaRepository.searchCount(condition), condition::toString);
+        }
+    }
+
+    @Test
+    public void narrowsToCandidates() {
+        MemberUsernameIndex.Stats before = usernameIndex.getStats();
+
+        // member12 and member120..129; every other member lacks one of the trigrams ber, er1 and r12
+        assertEquals(like("ber12", null, null), usernameIndex.candidates("ber12"));
+        // member1, member10..19 and member100..199, a superset of the matches
+        assertEquals(like("mber1", null, null), usernameIndex.candidates("mber1"));
+        assertTrue(usernameIndex.candidates("ber1").containsAll(like("ber1", null, null)));
+
+        // too short for a trigram
+        assertNull(usernameIndex.candidates("12"));
+        assertEquals(List.of(), usernameIndex.candidates("xyz"));
+
+        MemberUsernameIndex.Stats after = usernameIndex.getStats();
+        assertEquals(before.getBuilds(), after.getBuilds());
+        assertTrue(after.getLookups() > before.getLookups());
+        assertTrue(after.getFallbacks() > before.getFallbacks());
+    }
+
+    @Test
+    public void followsCommittedWrites() {
+        long builds = usernameIndex.getStats().getBuilds();
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernameContains("ewMem");
+
+        Long memberId = transactionTemplate.execute(status -> {
+            Member member = new Member("newMember", 77);
+            em.persist(member);
+            return member.getId();
+        });
+        assertEquals(List.of(memberId), ids(memberJpaRepository.search(condition)));
+
+        transactionTemplate.executeWithoutResult(status -> em.find(Member.class, memberId).setUsername("renamed"));
+        assertTrue(memberJpaRepository.search(condition).isEmpty());
+        condition.setUsernameContains("named");
+        assertEquals(List.of(memberId), ids(memberJpaRepository.search(condition)));
+
+        transactionTemplate.executeWithoutResult(status -> em.remove(em.find(Member.class, memberId)));
+        assertTrue(memberJpaRepository.search(condition).isEmpty());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("renamed", 1));
+            status.setRollbackOnly();
+        });
+        assertTrue(memberJpaRepository.search(condition).isEmpty());
+
+        assertEquals(builds, usernameIndex.getStats().getBuilds());
+    }
+
+    @Test
+    public void readWriteTransactionUsesLike() {
+        long lookups = usernameIndex.getStats().getLookups();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("uncommitted", 5));
+
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setUsernameContains("commit");
+            assertEquals(1, memberJpaRepository.search(condition).size());
+        });
+
+        assertEquals(lookups, usernameIndex.getStats().getLookups());
+    }
+
+    @Test
+    public void bulkUpdateRebuildsInBackground() throws InterruptedException {
+        QMember member = QMember.member;
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernameStartsWith("member2");
+        long builds = usernameIndex.getStats().getBuilds();
+
+        memberJpaRepository.bulkUpdate(condition, update -> update.set(member.username,
+                member.username.concat("-moved")));
+
+        // served by the plain like until the rebuilt index is swapped in
+        MemberSearchCondition moved = new MemberSearchCondition();
+        moved.setUsernameContains("-moved");
+        long fallbacks = usernameIndex.getStats().getFallbacks();
+        assertEquals(111, memberJpaRepository.search(moved).size());
+        assertTrue(usernameIndex.getStats().getFallbacks() > fallbacks);
+
+        for (int i = 0; i < 500 && !usernameIndex.getStats().isBuilt(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(builds + 1, usernameIndex.getStats().getBuilds());
+
+        long lookups = usernameIndex.getStats().getLookups();
+        assertEquals(111, memberJpaRepository.search(moved).size());
+        assertTrue(usernameIndex.getStats().getLookups() > lookups);
+    }
+
+    @Test
+    public void moreCandidatesThanOneInList() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < 600; i++) {
+                em.persist(new Member("listed" + i, i % 60));
+            }
+        });
+        long lookups = usernameIndex.getStats().getLookups();
+
+        // 600 candidates, more than the largest padded IN list
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernameContains("isted");
+        condition.setAgeGoe(30);
+
+        QMember member = QMember.member;
+        List<Long> expected = queryFactory
+                .select(member.id)
+                .from(member)
+                .where(member.username.contains("isted"), member.age.goe(30))
+                .orderBy(member.id.asc())
+                .fetch();
+        assertEquals(300, expected.size());
+        assertEquals(expected, ids(memberJpaRepository.searchByBuilder(condition)));
+        assertEquals(expected.size(), memberJpaRepository.searchCount(condition));
+        assertTrue(usernameIndex.getStats().getLookups() > lookups);
+    }
+
+    private List<Long> like(String fragment, String prefix, String teamName) {
+        QMember member = QMember.member;
+        return queryFactory
+                .select(member.id)
+                .from(member)
+                .where(
+                        member.username.contains(fragment),
+                        prefix == null ? null : member.username.startsWith(prefix),
+                        teamName == null ? null : member.team.name.eq(teamName)
+                )
+                .orderBy(member.id.asc())
+                .fetch();
+    }
+
+    private static List<Long> ids(List<MemberTeamDto> rows) {
+        return rows.stream()
+                .map(MemberTeamDto::getMemberId)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+}
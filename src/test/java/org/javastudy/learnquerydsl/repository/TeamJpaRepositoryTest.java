@@ -0,0 +1,126 @@
+package org.javastudy.learnquerydsl.repository;
+
+import org.javastudy.learnquerydsl.dto.MemberDto;
+import org.javastudy.learnquerydsl.dto.TeamMembersDto;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.javastudy.learnquerydsl.metrics.QueryBudget;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "team.members.max-per-team=10")
+class TeamJpaRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TeamJpaRepository teamJpaRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team empty = teamRepository.save(new Team("empty"));
+            Team small = teamRepository.save(new Team("small"));
+            Team large = teamRepository.save(new Team("large"));
+            for (int i = 0; i < 3; i++) {
+                memberRepository.save(new Member("small" + i, i, small));
+            }
+            for (int i = 0; i < 25; i++) {
+                memberRepository.save(new Member("large" + i, i, large));
+            }
+            memberRepository.save(new Member("teamless", 1));
+        });
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteAllInBatch();
+        teamRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void teamsWithMembersInThreeQueries() {
+        List<TeamMembersDto> teams;
+        try (QueryBudget budget = QueryBudget.open("teamsWithMembers", 10, 0, false)) {
+            teams = teamJpaRepository.findTeamsWithMembers(PageRequest.of(0, 20));
+            // the teams, the member counts and the first members of each
+            assertEquals(3, budget.getStatements());
+        }
+
+        assertEquals(List.of("empty", "small", "large"),
+                teams.stream().map(TeamMembersDto::getTeamName).collect(Collectors.toList()));
+
+        assertEquals(0, teams.get(0).getMemberCount());
+        assertTrue(teams.get(0).getMembers().isEmpty());
+
+        assertEquals(List.of(new MemberDto("small0", 0), new MemberDto("small1", 1), new MemberDto("small2", 2)),
+                teams.get(1).getMembers());
+        assertFalse(teams.get(1).isTruncated());
+
+        // only the first max-per-team members are listed
+        TeamMembersDto large = teams.get(2);
+        assertEquals(25, large.getMemberCount());
+        assertEquals(10, large.getMembers().size());
+        assertEquals(new MemberDto("large9", 9), large.getMembers().get(9));
+        assertTrue(large.isTruncated());
+    }
+
+    @Test
+    public void pagesOverTeams() {
+        List<TeamMembersDto> second = teamJpaRepository.findTeamsWithMembers(PageRequest.of(1, 2));
+
+        assertEquals(1, second.size());
+        assertEquals("large", second.get(0).getTeamName());
+        assertTrue(teamJpaRepository.findTeamsWithMembers(PageRequest.of(2, 2)).isEmpty());
+    }
+
+    @Test
+    public void pageSizeIsCapped() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < TeamJpaRepository.MAX_PAGE_SIZE; i++) {
+                teamRepository.save(new Team("extra" + i));
+            }
+        });
+
+        assertEquals(TeamJpaRepository.MAX_PAGE_SIZE,
+                teamJpaRepository.findTeamsWithMembers(PageRequest.of(0, 1000)).size());
+    }
+
+    @Test
+    public void membersCollectionsLoadInBatches() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.clear();
+            try (QueryBudget budget = QueryBudget.open("teamMembers", 10, 10, false)) {
+                List<Team> teams = teamRepository.findAll();
+                int members = 0;
+                for (Team team : teams) {
+                    members += team.getMembers().size();
+                }
+                assertEquals(28, members);
+                // the teams, then the members of all three
+                assertEquals(2, budget.getStatements());
+            }
+        });
+    }
+}
@@ -0,0 +1,86 @@
+package org.javastudy.learnquerydsl.repository;
+
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.javastudy.learnquerydsl.metrics.CacheRegionMetrics;
+import org.javastudy.learnquerydsl.metrics.QueryBudget;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class TeamRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    CacheRegionMetrics cacheRegionMetrics;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteAllInBatch();
+        teamRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void findByNameCachedUntilTeamWrite() {
+        Team saved = teamRepository.save(new Team("cachedTeam"));
+
+        assertEquals(saved.getId(), teamRepository.findByName("cachedTeam").get().getId());
+
+        CacheRegionMetrics.RegionStats before = cacheRegionMetrics.region(TeamRepository.BY_NAME_REGION);
+        try (QueryBudget budget = QueryBudget.open("findByName", 10, 10, false)) {
+            assertEquals("cachedTeam", teamRepository.findByName("cachedTeam").get().getName());
+            assertEquals(0, budget.getStatements());
+        }
+        assertEquals(before.getHits() + 1, cacheRegionMetrics.region(TeamRepository.BY_NAME_REGION).getHits());
+
+        transactionTemplate.executeWithoutResult(status -> em.find(Team.class, saved.getId()).setName("renamedTeam"));
+
+        assertTrue(teamRepository.findByName("cachedTeam").isEmpty());
+        assertEquals(saved.getId(), teamRepository.findByName("renamedTeam").get().getId());
+    }
+
+    @Test
+    public void lazyTeamServedFromTeamRegion() {
+        Long memberId = transactionTemplate.execute(status -> {
+            Team team = teamRepository.save(new Team("regionTeam"));
+            return memberRepository.save(new Member("member1", 10, team)).getId();
+        });
+        // loads the team once, which puts it into the region
+        transactionTemplate.executeWithoutResult(status -> em.find(Member.class, memberId).getTeam().getName());
+
+        CacheRegionMetrics.RegionStats before = cacheRegionMetrics.region(Team.CACHE_REGION);
+        transactionTemplate.executeWithoutResult(status -> {
+            Member member = em.find(Member.class, memberId);
+            try (QueryBudget budget = QueryBudget.open("lazyTeam", 10, 10, false)) {
+                assertEquals("regionTeam", member.getTeam().getName());
+                assertEquals(0, budget.getStatements());
+            }
+        });
+        assertEquals(before.getHits() + 1, cacheRegionMetrics.region(Team.CACHE_REGION).getHits());
+
+        List<String> regions = cacheRegionMetrics.snapshot().stream()
+                .map(CacheRegionMetrics.RegionStats::getRegion)
+                .collect(Collectors.toList());
+        assertTrue(regions.containsAll(List.of(Team.CACHE_REGION, TeamRepository.BY_NAME_REGION)));
+    }
+}
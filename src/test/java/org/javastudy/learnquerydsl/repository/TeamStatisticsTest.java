@@ -0,0 +1,134 @@
+package org.javastudy.learnquerydsl.repository;
+
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.TeamStatsDto;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.entity.QMember;
+import org.javastudy.learnquerydsl.entity.Team;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class TeamStatisticsTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    TeamStatistics teamStatistics;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    Long teamAId;
+    Long teamBId;
+    Long member1Id;
+    Long member2Id;
+
+    @BeforeEach
+    public void before() {
+        // other tests clear the tables with deleteAllInBatch, which the aggregates never hear about
+        teamStatistics.reconcile();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = teamRepository.save(new Team("teamA"));
+            Team teamB = teamRepository.save(new Team("teamB"));
+            member1Id = memberRepository.save(new Member("member1", 10, teamA)).getId();
+            member2Id = memberRepository.save(new Member("member2", 20, teamA)).getId();
+            memberRepository.save(new Member("member3", 30, teamB));
+            teamAId = teamA.getId();
+            teamBId = teamB.getId();
+        });
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteAllInBatch();
+        teamRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void maintainedWithoutGroupBy() {
+        long rebuilds = teamStatistics.getRebuilds();
+
+        assertEquals(new TeamStatsDto(teamAId, "teamA", 2, 30, 10, 20), stats(teamAId));
+        assertEquals(new TeamStatsDto(teamBId, "teamB", 1, 30, 30, 30), stats(teamBId));
+        assertEquals(15.0, stats(teamAId).getAvgAge());
+
+        // member2 moves from teamA to teamB
+        transactionTemplate.executeWithoutResult(status -> {
+            Member member2 = em.find(Member.class, member2Id);
+            member2.changeTeam(em.find(Team.class, teamBId));
+        });
+        assertEquals(new TeamStatsDto(teamAId, "teamA", 1, 10, 10, 10), stats(teamAId));
+        assertEquals(new TeamStatsDto(teamBId, "teamB", 2, 50, 20, 30), stats(teamBId));
+
+        // the only member of teamA leaves, min and max go with it
+        transactionTemplate.executeWithoutResult(status ->
+                em.remove(em.find(Member.class, member1Id)));
+        assertEquals(new TeamStatsDto(teamAId, "teamA", 0, 0, null, null), stats(teamAId));
+        assertNull(stats(teamAId).getAvgAge());
+
+        assertEquals(rebuilds, teamStatistics.getRebuilds());
+        assertTrue(teamStatistics.reconcile().getMismatchedTeamIds().isEmpty());
+    }
+
+    @Test
+    public void rolledBackWritesAreNotCounted() {
+        transactionTemplate.executeWithoutResult(status -> {
+            memberRepository.save(new Member("member4", 40, em.find(Team.class, teamAId)));
+            status.setRollbackOnly();
+        });
+
+        assertEquals(2, stats(teamAId).getMemberCount());
+    }
+
+    @Test
+    public void bulkUpdateRebuildsOnNextRead() {
+        QMember member = QMember.member;
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        memberJpaRepository.bulkUpdate(condition, update -> update.set(member.age, member.age.add(5)));
+        long rebuilds = teamStatistics.getRebuilds();
+
+        assertEquals(new TeamStatsDto(teamAId, "teamA", 2, 40, 15, 25), stats(teamAId));
+        assertEquals(rebuilds + 1, teamStatistics.getRebuilds());
+    }
+
+    @Test
+    public void reconcileReportsDrift() {
+        // a batch delete is not announced to the aggregates
+        memberRepository.deleteAllInBatch();
+
+        TeamStatistics.Reconciliation result = teamStatistics.reconcile();
+
+        assertEquals(List.of(teamAId, teamBId), result.getMismatchedTeamIds());
+        assertEquals(0, stats(teamBId).getMemberCount());
+    }
+
+    private TeamStatsDto stats(Long teamId) {
+        return teamStatistics.snapshot().stream()
+                .filter(stats -> stats.getTeamId().equals(teamId))
+                .findFirst()
+                .orElseThrow();
+    }
+}
@@ -0,0 +1,85 @@
+package org.javastudy.learnquerydsl.search;
+
+import org.javastudy.learnquerydsl.dto.MemberSearchCondition;
+import org.javastudy.learnquerydsl.dto.MemberTeamDto;
+import org.javastudy.learnquerydsl.entity.Member;
+import org.javastudy.learnquerydsl.repository.MemberRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "member.search.async.max-concurrent=1",
+        "member.search.async.queue-capacity=1"
+})
+class MemberSearchExecutorTest {
+
+    @Autowired
+    MemberSearchExecutor searchExecutor;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @AfterEach
+    public void cleanUp() {
+        memberRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void search() throws Exception {
+        memberRepository.save(new Member("member1", 10));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("member1");
+        List<MemberTeamDto> result = searchExecutor.search(condition).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, result.size());
+        assertEquals("member1", result.get(0).getUsername());
+    }
+
+    @Test
+    public void rejectsWhenSaturated() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> running = searchExecutor.submit(() -> {
+            started.countDown();
+            await(release);
+            return "running";
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = searchExecutor.submit(() -> "queued");
+
+        MemberSearchExecutor.Stats stats = searchExecutor.getStats();
+        assertEquals(1, stats.getActive());
+        assertEquals(1, stats.getQueued());
+
+        long rejectedBefore = stats.getRejected();
+        MemberSearchRejectedException rejected = assertThrows(MemberSearchRejectedException.class,
+                () -> searchExecutor.submit(() -> "rejected"));
+        assertEquals("member search is saturated: 1 of 1 running, 1 of 1 queued", rejected.getMessage());
+        assertEquals(rejectedBefore + 1, searchExecutor.getStats().getRejected());
+
+        release.countDown();
+        assertEquals("running", running.get(5, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+        assertEquals("accepted", searchExecutor.submit(() -> "accepted").get(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}